@@ -0,0 +1,93 @@
+package nodamushi.jfx.popup.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import javafx.application.Platform;
+
+/**
+ * ベンチマークからJavaFXを利用するための補助。<br/>
+ * JavaFXはヘッドレス(Monocle)で起動する。
+ * 実際のウィンドウで実行する場合はシステムプロパティ bench.head=true を指定する。
+ * @author nodamushi
+ */
+final class Fx{
+
+  private Fx(){}
+
+  private static boolean started;
+
+  /** JavaFXを起動する。二回目以降は何もしない */
+  static synchronized void startup(){
+    if(started) {
+      return;
+    }
+    if(!Boolean.getBoolean("bench.head")){
+      System.setProperty("glass.platform", "Monocle");
+      System.setProperty("monocle.platform", "Headless");
+      System.setProperty("prism.order", "sw");
+      System.setProperty("prism.text", "t2k");
+    }
+    final CountDownLatch l = new CountDownLatch(1);
+    Platform.startup(l::countDown);
+    Platform.setImplicitExit(false);
+    await(l);
+    started = true;
+  }
+
+  /**
+   * JavaFX Application Threadでrを実行し、終わるまで待つ
+   * @param r
+   */
+  static void run(final Runnable r){
+    call(()->{
+      r.run();
+      return null;
+    });
+  }
+
+  /**
+   * JavaFX Application Threadでsを実行し、結果を返す
+   * @param s
+   * @return
+   */
+  static <T> T call(final Supplier<T> s){
+    if(Platform.isFxApplicationThread()){
+      return s.get();
+    }
+    final AtomicReference<T> v = new AtomicReference<>();
+    final AtomicReference<Throwable> ex = new AtomicReference<>();
+    final CountDownLatch l = new CountDownLatch(1);
+    Platform.runLater(()->{
+      try{
+        v.set(s.get());
+      }catch(final Throwable e){
+        ex.set(e);
+      }finally{
+        l.countDown();
+      }
+    });
+    await(l);
+    final Throwable e = ex.get();
+    if(e instanceof RuntimeException){
+      throw (RuntimeException)e;
+    }
+    if(e instanceof Error){
+      throw (Error)e;
+    }
+    if(e != null){
+      throw new IllegalStateException(e);
+    }
+    return v.get();
+  }
+
+  private static void await(final CountDownLatch l){
+    try{
+      l.await();
+    }catch(final InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package nodamushi.jfx.popup.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.event.Event;
+import javafx.event.EventType;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.shape.Rectangle;
+
+/**
+ * ベンチマーク用の、Rectangleを格子状に並べたScene
+ * @author nodamushi
+ */
+final class Grid{
+
+  final List<Node> nodes;
+  final Group root;
+  final Scene scene;
+
+  /**
+   * @param n Nodeの数
+   * @param size Nodeの一辺の長さ
+   */
+  Grid(final int n,final double size){
+    final int w = (int)Math.ceil(Math.sqrt(n));
+    final ArrayList<Node> l = new ArrayList<>(n);
+    for(int i=0;i<n;i++){
+      final Rectangle r = new Rectangle(size, size);
+      r.setLayoutX((i%w)*size);
+      r.setLayoutY((i/w)*size);
+      l.add(r);
+    }
+    nodes = l;
+    root = new Group(l);
+    scene = new Scene(root);
+  }
+
+  /**
+   * nの中央で合成したマウスイベントを発生させる
+   * @param n
+   * @param type
+   */
+  static void fire(final Node n,final EventType<MouseEvent> type){
+    final double x = n.getLayoutX(),y = n.getLayoutY();
+    Event.fireEvent(n, new MouseEvent(type, 1, 1, x+1, y+1, MouseButton.NONE, 0,
+        false, false, false, false, false, false, false, true, false, false, null));
+  }
+}
@@ -0,0 +1,86 @@
+package nodamushi.jfx.popup.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import nodamushi.jfx.popup.SinglePopupBehavior.BehaviorGroup;
+import nodamushi.jfx.popup.TooltipBehavior;
+
+/**
+ * BehaviorGroupの操作の時間。一回の呼び出しでbehaviors個のBehaviorを処理する。
+ * @author nodamushi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GroupBenchmark{
+
+  @Param({"1000", "10000", "100000"})
+  int behaviors;
+
+  private List<TooltipBehavior> list;
+  private BehaviorGroup group;
+
+  @Setup
+  public void setup(){
+    list = new ArrayList<>(behaviors);
+    for(int i=0;i<behaviors;i++){
+      list.add(new TooltipBehavior());
+    }
+    group = new BehaviorGroup();
+    for(final TooltipBehavior b:list){
+      group.add(b);
+    }
+  }
+
+  /** 全て追加してから全て削除する */
+  @Benchmark
+  public BehaviorGroup addRemove(){
+    final BehaviorGroup g = new BehaviorGroup();
+    for(final TooltipBehavior b:list){
+      g.add(b);
+    }
+    for(final TooltipBehavior b:list){
+      g.remove(b);
+    }
+    return g;
+  }
+
+  @Benchmark
+  public void contains(final Blackhole bh){
+    final BehaviorGroup g = group;
+    for(final TooltipBehavior b:list){
+      bh.consume(g.contains(b));
+    }
+  }
+
+  /** 表示中のBehaviorがあるかの確認 */
+  @Benchmark
+  public boolean isShowing(){
+    return group.isShowing();
+  }
+
+  /** グループの全てのBehaviorを止める */
+  @Benchmark
+  public BehaviorGroup kill(){
+    group.kill();
+    return group;
+  }
+}
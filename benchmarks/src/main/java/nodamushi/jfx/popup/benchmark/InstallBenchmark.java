@@ -0,0 +1,112 @@
+package nodamushi.jfx.popup.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.scene.Node;
+import nodamushi.jfx.popup.TooltipBehavior;
+
+/**
+ * 全てのNodeにインストール、アンインストールする時間。<br/>
+ * 一回の呼び出しでnodes個のNodeを処理する。
+ * @author nodamushi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class InstallBenchmark{
+
+  @Param({"1000", "10000", "100000"})
+  int nodes;
+
+  @Param({"false", "true"})
+  boolean delegated;
+
+  private Grid grid;
+  private TooltipBehavior installed;
+
+  @Setup
+  public void setup(){
+    Fx.startup();
+    grid = Fx.call(()->new Grid(nodes, 4));
+  }
+
+  /** インストールしたものを次の呼び出しの前に削除する */
+  @TearDown(Level.Invocation)
+  public void uninstall(){
+    final TooltipBehavior b = installed;
+    if(b != null){
+      installed = null;
+      Fx.run(()->b.uninstallAll(grid.nodes));
+    }
+  }
+
+  TooltipBehavior newBehavior(){
+    final TooltipBehavior b = new TooltipBehavior();
+    b.setDelegatedDispatch(delegated);
+    return b;
+  }
+
+  /** installを一つずつ呼び出す */
+  @Benchmark
+  public TooltipBehavior installLoop(){
+    installed = Fx.call(()->{
+      final TooltipBehavior b = newBehavior();
+      for(final Node n:grid.nodes){
+        b.install(n);
+      }
+      return b;
+    });
+    return installed;
+  }
+
+  /** installAllでまとめてインストールする */
+  @Benchmark
+  public TooltipBehavior installAll(){
+    installed = Fx.call(()->{
+      final TooltipBehavior b = newBehavior();
+      b.installAll(grid.nodes);
+      return b;
+    });
+    return installed;
+  }
+
+  /** インストール済みのBehavior */
+  @State(Scope.Thread)
+  public static class Installed{
+    TooltipBehavior behavior;
+
+    @Setup(Level.Invocation)
+    public void setup(final InstallBenchmark s){
+      behavior = Fx.call(()->{
+        final TooltipBehavior b = s.newBehavior();
+        b.installAll(s.grid.nodes);
+        return b;
+      });
+    }
+  }
+
+  /** uninstallAllでまとめて削除する */
+  @Benchmark
+  public TooltipBehavior uninstallAll(final Installed i){
+    final TooltipBehavior b = i.behavior;
+    Fx.run(()->b.uninstallAll(grid.nodes));
+    return b;
+  }
+}
@@ -0,0 +1,112 @@
+package nodamushi.jfx.popup.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.scene.Node;
+import javafx.scene.input.MouseEvent;
+import javafx.util.Duration;
+import nodamushi.jfx.popup.TooltipBehavior;
+
+/**
+ * インストールされたNodeの上をマウスが動いたときの処理(mouseMove)の時間。<br/>
+ * イベントはNodeに対して発生させるので、イベントの配送の時間も含む。
+ * 表示するタイマーは動作しないように十分に長くしてある。
+ * @author nodamushi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MouseMoveBenchmark{
+
+  /** 一回の呼び出しで発生させるMOUSE_MOVEDの数 */
+  private static final int MOVES = 1000;
+  /** 次のNodeまでの間隔(Nodeの数と互いに素になりやすい素数) */
+  private static final int STRIDE = 7919;
+
+  @Param({"1000", "10000", "100000"})
+  int nodes;
+
+  @Param({"false", "true"})
+  boolean delegated;
+
+  private Grid grid;
+  private TooltipBehavior behavior;
+  private int next;
+
+  @Setup
+  public void setup(){
+    Fx.startup();
+    Fx.run(()->{
+      grid = new Grid(nodes, 4);
+      behavior = new TooltipBehavior();
+      behavior.setDelegatedDispatch(delegated);
+      behavior.setOpenDuration(Duration.hours(1));
+      behavior.installAll(grid.nodes);
+    });
+  }
+
+  @TearDown
+  public void tearDown(){
+    Fx.run(()->{
+      behavior.kill();
+      behavior.uninstallAll(grid.nodes);
+    });
+  }
+
+  /** 毎回別のNodeに移る */
+  @Benchmark
+  @OperationsPerInvocation(MOVES)
+  public void moveAcrossNodes(){
+    Fx.run(this::sweep);
+  }
+
+  /** 同じNodeの上で動く */
+  @Benchmark
+  @OperationsPerInvocation(MOVES)
+  public void moveWithinNode(){
+    Fx.run(()->{
+      final Node n = grid.nodes.get(next);
+      for(int i=0;i<MOVES;i++){
+        Grid.fire(n, MouseEvent.MOUSE_MOVED);
+      }
+      Grid.fire(n, MouseEvent.MOUSE_EXITED);
+      next = (next+STRIDE)%grid.nodes.size();
+    });
+  }
+
+  private void sweep(){
+    final List<Node> l = grid.nodes;
+    final int size = l.size();
+    int i = next;
+    Node prev = null;
+    for(int k=0;k<MOVES;k++){
+      final Node n = l.get(i);
+      if(prev != null){
+        Grid.fire(prev, MouseEvent.MOUSE_EXITED);
+      }
+      Grid.fire(n, MouseEvent.MOUSE_MOVED);
+      prev = n;
+      i = (i+STRIDE)%size;
+    }
+    Grid.fire(prev, MouseEvent.MOUSE_EXITED);
+    next = i;
+  }
+}
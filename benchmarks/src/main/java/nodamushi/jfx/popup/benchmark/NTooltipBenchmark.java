@@ -0,0 +1,60 @@
+package nodamushi.jfx.popup.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import nodamushi.jfx.popup.NTooltip;
+
+/**
+ * NTooltipの生成の時間。一回の呼び出しでcount個生成する。
+ * @author nodamushi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class NTooltipBenchmark{
+
+  @Param({"1", "100", "1000"})
+  int count;
+
+  @Setup
+  public void setup(){
+    Fx.startup();
+  }
+
+  @Benchmark
+  public void construct(final Blackhole bh){
+    Fx.run(()->{
+      for(int i=0;i<count;i++){
+        bh.consume(new NTooltip("tooltip"));
+      }
+    });
+  }
+
+  /** 生成して、CSSを適用する */
+  @Benchmark
+  public void constructAndStyle(final Blackhole bh){
+    Fx.run(()->{
+      for(int i=0;i<count;i++){
+        final NTooltip t = new NTooltip("tooltip");
+        t.getScene().getRoot().applyCss();
+        bh.consume(t);
+      }
+    });
+  }
+}
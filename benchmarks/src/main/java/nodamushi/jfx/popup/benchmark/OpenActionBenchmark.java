@@ -0,0 +1,149 @@
+package nodamushi.jfx.popup.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.scene.Node;
+import javafx.scene.control.Tooltip;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.stage.Popup;
+import javafx.stage.PopupWindow;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+import nodamushi.jfx.popup.SinglePopupBehavior.BehaviorGroup;
+import nodamushi.jfx.popup.TooltipBehavior;
+import nodamushi.jfx.popup.TooltipBehaviorBase;
+
+/**
+ * 表示するタイマーが動作したときの処理(openAction)の時間。<br/>
+ * 表示待機状態にしてからopenActionでポップアップを表示し、killで非表示にするまでを一回とする。<br/>
+ * groupは同じBehaviorGroupに属するBehaviorの数で、表示時に他のBehaviorを止める処理の規模を変える。<br/>
+ * popupがtooltipの場合はTooltipを、popupの場合は文字を含まないPopupを表示する。
+ * popupは文字のレイアウトの時間を含まないので、Behaviorとウィンドウの表示の時間に近い。
+ * @author nodamushi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class OpenActionBenchmark{
+
+  private static final int OPENS = 50;
+
+  @Param({"1", "100", "10000"})
+  int group;
+
+  @Param({"tooltip", "popup"})
+  String popup;
+
+  private Grid grid;
+  private Stage stage;
+  private Opener<?> behavior;
+  private BehaviorGroup behaviors;
+  private final List<TooltipBehavior> others = new ArrayList<>();
+  private int next;
+
+  /** openActionを呼び出せるようにしたBehavior */
+  private static class Opener<P extends PopupWindow> extends TooltipBehaviorBase<P>{
+    private final P popup;
+    Opener(final P popup){
+      this.popup = popup;
+    }
+    void open(){
+      openAction(null);
+    }
+    void installAll(final List<Node> nodes){
+      installAll(nodes, n->popup);
+    }
+    @Override
+    protected void runOpenTimer(final P p ,final Node hover){
+      runOpenTimer(getOpenDuration());
+    }
+    @Override
+    protected void runHideTimer(final P p ,final Node hover){
+      runHideTimer(getHideDuration());
+    }
+    @Override
+    protected void runLeftTimer(final P p ,final Node hover){
+      runLeftTimer(getLeftDuration());
+    }
+  }
+
+  private static Opener<?> newOpener(final String popup){
+    if("popup".equals(popup)){
+      final Popup p = new Popup();
+      p.getContent().add(new Rectangle(120, 24, Color.LIGHTYELLOW));
+      return new Opener<>(p);
+    }
+    return new Opener<>(new Tooltip("benchmark"));
+  }
+
+  @Setup
+  public void setup(){
+    Fx.startup();
+    Fx.run(()->{
+      grid = new Grid(100, 20);
+      stage = new Stage();
+      stage.setScene(grid.scene);
+      stage.show();
+      behavior = newOpener(popup);
+      behavior.setOpenDuration(Duration.hours(1));
+      behavior.setHideDuration(Duration.INDEFINITE);
+      behavior.setPopupOnNonFocusWindow(true);
+      behavior.installAll(grid.nodes);
+      behaviors = new BehaviorGroup(behavior);
+      for(int i=1;i<group;i++){
+        final TooltipBehavior b = new TooltipBehavior();
+        others.add(b);
+        behaviors.add(b);
+      }
+    });
+  }
+
+  @TearDown
+  public void tearDown(){
+    Fx.run(()->{
+      behaviors.clear();
+      behavior.kill();
+      behavior.uninstallAll(grid.nodes);
+      stage.hide();
+    });
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPENS)
+  public void openAndKill(){
+    Fx.run(()->{
+      final List<Node> l = grid.nodes;
+      for(int i=0;i<OPENS;i++){
+        final Node n = l.get(next);
+        next = (next+1)%l.size();
+        Grid.fire(n, MouseEvent.MOUSE_MOVED);
+        behavior.open();
+        if(!behavior.isShowing()){
+          throw new IllegalStateException("not shown");
+        }
+        behavior.kill();
+      }
+    });
+  }
+}
@@ -0,0 +1,57 @@
+package nodamushi.jfx.popup;
+
+import javafx.css.PseudoClass;
+import javafx.scene.control.Tooltip;
+
+/**
+ * Tooltipの表示待機状態(activated)を設定する方法。<br/>
+ * {@link java.util.ServiceLoader}で登録された実装のうち、利用可能な最初のものが使われる。
+ * 登録されていない場合は{@link ActivationAdapter#methodHandle()}、
+ * それも利用できない場合は{@link ActivationAdapter#pseudoClass()}が使われる。
+ * @author nodamushi
+ * @see SinglePopupBehavior#setActivationAdapter(ActivationAdapter)
+ */
+public interface ActivationAdapter{
+
+  /**
+   * この実装が利用可能かどうか
+   * @return
+   */
+  boolean isAvailable();
+
+  /**
+   * Tooltipの表示待機状態を設定する
+   * @param t
+   * @param activated
+   */
+  void setActivated(Tooltip t,boolean activated);
+
+  /**
+   * TooltipのprivateメソッドsetActivatedを呼び出す。<br/>
+   * MethodHandleは最初に一度だけ取得する。
+   * アクセスが制限されている環境では{@link ActivationAdapter#isAvailable()}がfalseを返す。
+   * @return
+   */
+  public static ActivationAdapter methodHandle(){
+    return MethodHandleActivationAdapter.INSTANCE;
+  }
+
+  /**
+   * リフレクションを使わずに、:activated疑似クラスの状態だけを更新する。<br/>
+   * {@link Tooltip#activatedProperty()}は変更されない。
+   * @return
+   */
+  public static ActivationAdapter pseudoClass(){
+    return new ActivationAdapter(){
+      private final PseudoClass activated = PseudoClass.getPseudoClass("activated");
+      @Override
+      public boolean isAvailable(){
+        return true;
+      }
+      @Override
+      public void setActivated(final Tooltip t ,final boolean b){
+        t.pseudoClassStateChanged(activated, b);
+      }
+    };
+  }
+}
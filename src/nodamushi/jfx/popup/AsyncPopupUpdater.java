@@ -0,0 +1,101 @@
+package nodamushi.jfx.popup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import javafx.scene.Node;
+import javafx.stage.PopupWindow;
+
+/**
+ * ポップアップの内容を非同期に準備する。<br/>
+ * {@link SinglePopupBehavior#setAsyncPopupUpdater(AsyncPopupUpdater)}で登録する。
+ * 二つのloadのどちらか一方と、applyを実装する。
+ * @author nodamushi
+ *
+ * @param <P> ポップアップの型
+ * @param <T> 準備した内容の型
+ */
+public interface AsyncPopupUpdater<P extends PopupWindow, T>{
+
+  /**
+   * 内容の準備を開始する。<br/>
+   * JavaFX Application Threadから呼び出される。時間のかかる処理はexecutorで実行し、
+   * ポップアップやNodeには他のスレッドから触れないこと。<br/>
+   * マウスが離れたとき、押されたとき、{@link SinglePopupBehavior#kill()}が呼ばれたときなどは
+   * 返したCompletableFutureをcancelし、結果は使われない。
+   * ただし、CompletableFutureのcancelは実行中の処理に割り込まないため、
+   * {@link CompletableFuture#supplyAsync(java.util.function.Supplier, Executor)}などで始めた処理はそのまま最後まで実行される。
+   * 処理を途中で止めるには、cancellationの{@link Cancellation#isCancelled()}を確認するか、
+   * {@link Cancellation#onCancel(Runnable)}で問い合わせなどを中断する処理を登録すること。<br/>
+   * デフォルト実装は{@link AsyncPopupUpdater#load(PopupWindow, Node, Executor)}を呼び出す。
+   * このメソッドと{@link AsyncPopupUpdater#load(PopupWindow, Node, Executor)}のどちらか一方を実装すること。
+   * @param p 表示するポップアップ
+   * @param node マウスがホバーされているノード
+   * @param executor {@link SinglePopupBehavior#getAsyncExecutor()}
+   * @param cancellation この準備が取り消されたかどうか
+   * @return 準備した内容。nullの場合は{@link AsyncPopupUpdater#failed(PopupWindow, Node, Throwable)}が呼ばれる
+   */
+  default CompletableFuture<? extends T> load(final P p,final Node node,final Executor executor,
+      final Cancellation cancellation){
+    return load(p, node, executor);
+  }
+
+  /**
+   * 取り消しを確認しない内容の準備を開始する。<br/>
+   * 取り消されても処理は止まらない。
+   * 詳細は{@link AsyncPopupUpdater#load(PopupWindow, Node, Executor, Cancellation)}を参照。<br/>
+   * デフォルト実装は{@link UnsupportedOperationException}を投げる。
+   * @param p 表示するポップアップ
+   * @param node マウスがホバーされているノード
+   * @param executor {@link SinglePopupBehavior#getAsyncExecutor()}
+   * @return 準備した内容
+   */
+  default CompletableFuture<? extends T> load(final P p,final Node node,final Executor executor){
+    throw new UnsupportedOperationException("load is not implemented");
+  }
+
+  /**
+   * 準備した内容をポップアップに反映する。<br/>
+   * JavaFX Application Threadから呼び出される。
+   * @param p 表示するポップアップ
+   * @param node マウスがホバーされているノード
+   * @param value {@link AsyncPopupUpdater#load(PopupWindow, Node, Executor)}の結果
+   */
+  void apply(P p,Node node,T value);
+
+  /**
+   * 準備に失敗したとき、loadがnullを返したときに呼ばれる。<br/>
+   * JavaFX Application Threadから呼び出される。
+   * エラーの内容をポップアップに設定してtrueを返すと、そのポップアップを表示する。
+   * 仮の内容を既に表示している場合は、戻り値に関わらず表示したままにする。<br/>
+   * 失敗は{@link PopupMetrics#loadFailed(SinglePopupBehavior, Node, Throwable)}にも通知される。<br/>
+   * デフォルト実装は何もせずにfalseを返す。
+   * @param p 表示するポップアップ
+   * @param node マウスがホバーされているノード
+   * @param ex 失敗の原因。loadがnullを返した場合はnull
+   * @return ポップアップを表示する場合はtrue
+   */
+  default boolean failed(final P p,final Node node,final Throwable ex){
+    return false;
+  }
+
+  /**
+   * 準備の取り消しを確認する。<br/>
+   * 任意のスレッドから利用できる。
+   */
+  public static interface Cancellation{
+    /**
+     * 準備が取り消されたかどうか
+     * @return
+     */
+    boolean isCancelled();
+
+    /**
+     * 準備が取り消されたときに実行する処理を登録する。<br/>
+     * 取り消したスレッド(JavaFX Application Thread)で実行される。
+     * 既に取り消されている場合は、このメソッドを呼び出したスレッドですぐに実行する。
+     * @param r
+     */
+    void onCancel(Runnable r);
+  }
+}
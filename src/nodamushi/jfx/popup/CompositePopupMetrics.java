@@ -0,0 +1,171 @@
+package nodamushi.jfx.popup;
+
+import java.util.ArrayList;
+
+import javafx.scene.Node;
+import nodamushi.jfx.popup.SinglePopupBehavior.BehaviorGroup;
+
+/**
+ * 複数の{@link PopupMetrics}に順に通知する。<br/>
+ * {@link PopupMetrics#combine(PopupMetrics...)}で作成する。
+ * @author nodamushi
+ */
+final class CompositePopupMetrics implements PopupMetrics{
+
+  private final PopupMetrics[] list;
+
+  private CompositePopupMetrics(final PopupMetrics[] list){
+    this.list = list;
+  }
+
+  /**
+   * 入れ子のCompositePopupMetricsを展開し、nullと重複を除いてまとめる
+   * @param ms
+   * @return 全てnullの場合はnull。一つだけの場合はそのもの
+   */
+  static PopupMetrics of(final PopupMetrics... ms){
+    if(ms == null) {
+      return null;
+    }
+    final ArrayList<PopupMetrics> l = new ArrayList<>(ms.length);
+    for(final PopupMetrics m:ms){
+      if(m instanceof CompositePopupMetrics){
+        for(final PopupMetrics c:((CompositePopupMetrics)m).list){
+          add(l, c);
+        }
+      }else if(m != null){
+        add(l, m);
+      }
+    }
+    switch(l.size()){
+      case 0: return null;
+      case 1: return l.get(0);
+      default: return new CompositePopupMetrics(l.toArray(new PopupMetrics[l.size()]));
+    }
+  }
+
+  private static void add(final ArrayList<PopupMetrics> l,final PopupMetrics m){
+    for(int i=0,size=l.size();i<size;i++){
+      if(l.get(i) == m) {
+        return;
+      }
+    }
+    l.add(m);
+  }
+
+  @Override
+  public boolean isEnabled(){
+    for(final PopupMetrics m:list){
+      if(m.isEnabled()){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void activated(final SinglePopupBehavior<?> b ,final Node hover){
+    for(final PopupMetrics m:list){
+      m.activated(b, hover);
+    }
+  }
+
+  @Override
+  public void openTimerFired(final SinglePopupBehavior<?> b ,final Node hover){
+    for(final PopupMetrics m:list){
+      m.openTimerFired(b, hover);
+    }
+  }
+
+  @Override
+  public void suppressed(final SinglePopupBehavior<?> b ,final Node hover){
+    for(final PopupMetrics m:list){
+      m.suppressed(b, hover);
+    }
+  }
+
+  @Override
+  public void updating(final SinglePopupBehavior<?> b ,final Node hover){
+    for(final PopupMetrics m:list){
+      m.updating(b, hover);
+    }
+  }
+
+  @Override
+  public void updated(final SinglePopupBehavior<?> b ,final Node hover ,final long nanos){
+    for(final PopupMetrics m:list){
+      m.updated(b, hover, nanos);
+    }
+  }
+
+  @Override
+  public void showing(final SinglePopupBehavior<?> b ,final Node hover){
+    for(final PopupMetrics m:list){
+      m.showing(b, hover);
+    }
+  }
+
+  @Override
+  public void shown(final SinglePopupBehavior<?> b ,final Node hover ,final long nanos){
+    for(final PopupMetrics m:list){
+      m.shown(b, hover, nanos);
+    }
+  }
+
+  @Override
+  public void hiding(final SinglePopupBehavior<?> b ,final Node node){
+    for(final PopupMetrics m:list){
+      m.hiding(b, node);
+    }
+  }
+
+  @Override
+  public void hidden(final SinglePopupBehavior<?> b ,final Node node ,final long nanos){
+    for(final PopupMetrics m:list){
+      m.hidden(b, node, nanos);
+    }
+  }
+
+  @Override
+  public void loadFailed(final SinglePopupBehavior<?> b ,final Node hover ,final Throwable ex){
+    for(final PopupMetrics m:list){
+      m.loadFailed(b, hover, ex);
+    }
+  }
+
+  @Override
+  public void poolExhausted(final SinglePopupBehavior<?> b ,final Node hover){
+    for(final PopupMetrics m:list){
+      m.poolExhausted(b, hover);
+    }
+  }
+
+  @Override
+  public void hideTimerFired(final SinglePopupBehavior<?> b ,final Node node){
+    for(final PopupMetrics m:list){
+      m.hideTimerFired(b, node);
+    }
+  }
+
+  @Override
+  public void leftTimerFired(final SinglePopupBehavior<?> b ,final Node node){
+    for(final PopupMetrics m:list){
+      m.leftTimerFired(b, node);
+    }
+  }
+
+  @Override
+  public void killed(final SinglePopupBehavior<?> b){
+    for(final PopupMetrics m:list){
+      m.killed(b);
+    }
+  }
+
+  @Override
+  public void killedByGroup(final BehaviorGroup g ,final SinglePopupBehavior<?> source ,
+      final SinglePopupBehavior<?> b){
+    for(final PopupMetrics m:list){
+      m.killedByGroup(g, source, b);
+    }
+  }
+}
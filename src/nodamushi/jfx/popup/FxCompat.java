@@ -0,0 +1,119 @@
+package nodamushi.jfx.popup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import javafx.scene.Node;
+import javafx.scene.image.Image;
+
+/**
+ * JavaFX 8とJavaFX 9以降(OpenJFX)で名前や公開範囲が異なるAPIを呼び出す。<br/>
+ * JavaFX 8のimpl_メソッドや、com.sun.javafxのクラスに直接依存しないように、
+ * 実行時に利用可能なものをMethodHandleで探す。
+ * @author nodamushi
+ */
+final class FxCompat{
+
+  private FxCompat(){}
+
+  /** JavaFX 8のNode#impl_reapplyCSS */
+  private static final MethodHandle REAPPLY_CSS =
+      find(Node.class, "impl_reapplyCSS", MethodType.methodType(void.class));
+  /** JavaFX 9以降のImage#getUrl、JavaFX 8のImage#impl_getUrl */
+  private static final MethodHandle IMAGE_URL = findImageUrl();
+  /** StyleManager.getInstance().getCachedImage(String) */
+  private static final MethodHandle CACHED_IMAGE = findCachedImage();
+
+  private static final String REAPPLY = "nodamushi-reapply-css";
+
+  private static MethodHandle find(final Class<?> c,final String name,final MethodType t){
+    try{
+      return MethodHandles.publicLookup().findVirtual(c, name, t);
+    }catch(final ReflectiveOperationException | RuntimeException e){
+      return null;
+    }
+  }
+
+  private static MethodHandle findImageUrl(){
+    final MethodType t = MethodType.methodType(String.class);
+    final MethodHandle h = find(Image.class, "getUrl", t);
+    return h != null? h: find(Image.class, "impl_getUrl", t);
+  }
+
+  private static MethodHandle findCachedImage(){
+    try{
+      final Class<?> c = Class.forName("com.sun.javafx.css.StyleManager");
+      final MethodHandles.Lookup l = MethodHandles.publicLookup();
+      final MethodHandle i = l.findStatic(c, "getInstance", MethodType.methodType(c));
+      final MethodHandle g = l.findVirtual(c, "getCachedImage", MethodType.methodType(Image.class, String.class));
+      //モジュールが公開していない場合は、ここで失敗する
+      i.invoke();
+      return MethodHandles.filterArguments(g, 0, i.asType(MethodType.methodType(c)))
+          .asType(MethodType.methodType(Image.class, String.class));
+    }catch(final Throwable e){
+      return null;
+    }
+  }
+
+  /**
+   * NodeのCSSを再適用する。<br/>
+   * JavaFX 9以降では公開されていないので、styleClassの変更によって再適用させる。
+   * @param n
+   */
+  static void reapplyCss(final Node n){
+    if(REAPPLY_CSS != null){
+      try{
+        REAPPLY_CSS.invokeExact(n);
+        return;
+      }catch(final RuntimeException | Error e){
+        throw e;
+      }catch(final Throwable e){
+        throw new IllegalStateException(e);
+      }
+    }
+    n.getStyleClass().add(REAPPLY);
+    n.getStyleClass().remove(REAPPLY);
+  }
+
+  /**
+   * Imageの読み込み元のURL
+   * @param image
+   * @return 不明な場合はnull
+   */
+  static String getUrl(final Image image){
+    if(IMAGE_URL == null) {
+      return null;
+    }
+    try{
+      return (String)IMAGE_URL.invokeExact(image);
+    }catch(final RuntimeException | Error e){
+      throw e;
+    }catch(final Throwable e){
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * CSSで指定されたURLの画像を読み込む。<br/>
+   * StyleManagerのキャッシュが利用できない場合は、新しく読み込む。
+   * @param url
+   * @return 読み込めない場合はnull
+   */
+  static Image getCachedImage(final String url){
+    if(CACHED_IMAGE != null){
+      try{
+        return (Image)CACHED_IMAGE.invokeExact(url);
+      }catch(final RuntimeException | Error e){
+        throw e;
+      }catch(final Throwable e){
+        throw new IllegalStateException(e);
+      }
+    }
+    try{
+      return new Image(url);
+    }catch(final IllegalArgumentException e){
+      return null;
+    }
+  }
+}
@@ -0,0 +1,302 @@
+package nodamushi.jfx.popup;
+
+import java.util.List;
+
+import javafx.scene.Node;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import nodamushi.jfx.popup.SinglePopupBehavior.BehaviorGroup;
+
+/**
+ * JFRのイベントを記録するPopupMetrics。{@link JfrPopupMetrics}から利用する。<br/>
+ * いずれかのイベントを有効にしたRecordingが動いているかをキャッシュし、
+ * 動いていない間は{@link #isEnabled()}がfalseになり、イベントを生成しない(イベントのクラスも読み込まない)。
+ * キャッシュはRecordingの開始、停止の度に更新する。
+ * 動いているRecordingの設定を変えた場合は、次にRecordingの状態が変わるまで反映されない。
+ * @author nodamushi
+ */
+final class JfrPopupEvents implements PopupMetrics{
+
+  /** いずれかのイベントが動いているRecordingで有効かどうか */
+  private static volatile boolean enabled;
+
+  /**
+   * Recordingの状態の変化の監視を開始する。一度だけ呼び出す。<br/>
+   * 既に記録している場合(-XX:StartFlightRecordingなど)は、最初の動作から記録するためにすぐに登録する。
+   * そうでない場合、監視の登録はJFRの初期化を伴い数十msかかるので、
+   * JavaFX Application Threadを止めないように別スレッドで行う。
+   * 登録までに開始されたRecordingは、登録の直後に反映する。
+   */
+  static void startListening(){
+    if(FlightRecorder.isInitialized()){
+      listen();
+      return;
+    }
+    final Thread t = new Thread(JfrPopupEvents::listen, "JfrPopupEvents listener");
+    t.setDaemon(true);
+    t.start();
+  }
+
+  private static void listen(){
+    try{
+      FlightRecorder.addListener(new FlightRecorderListener(){
+        @Override
+        public void recordingStateChanged(final Recording r){
+          refresh();
+        }
+      });
+    }catch(final SecurityException e){
+      //FlightRecorderPermissionが無い場合は記録しない
+      return;
+    }
+    //登録までに記録が開始されていた場合
+    if(FlightRecorder.isInitialized()){
+      refresh();
+    }
+  }
+
+  private static synchronized void refresh(){
+    final List<Class<? extends PopupEvent>> events = List.of(
+        ActivationEvent.class, OpenTimerEvent.class, UpdateEvent.class,
+        ShowEvent.class, HideEvent.class, GroupKillEvent.class);
+    boolean e = false;
+    for(final Class<? extends PopupEvent> c:events){
+      if(EventType.getEventType(c).isEnabled()){
+        e = true;
+        break;
+      }
+    }
+    enabled = e;
+  }
+
+  /** イベントを記録する。記録が初めて有効になったときに作成する */
+  private Recorder recorder;
+
+  private Recorder recorder(){
+    Recorder r = recorder;
+    if(r == null){
+      recorder = r = new Recorder();
+    }
+    return r;
+  }
+
+  @Override
+  public boolean isEnabled(){
+    return enabled;
+  }
+
+  @Override
+  public void activated(final SinglePopupBehavior<?> b ,final Node hover){
+    if(enabled){
+      recorder().activated(b, hover);
+    }
+  }
+
+  @Override
+  public void openTimerFired(final SinglePopupBehavior<?> b ,final Node hover){
+    if(enabled){
+      recorder().openTimerFired(b, hover);
+    }
+  }
+
+  @Override
+  public void updating(final SinglePopupBehavior<?> b ,final Node hover){
+    if(enabled){
+      recorder().updating();
+    }
+  }
+
+  @Override
+  public void updated(final SinglePopupBehavior<?> b ,final Node hover ,final long nanos){
+    //開始したイベントは、その後に記録が止まっても終了させる
+    final Recorder r = recorder;
+    if(r != null){
+      r.updated(b, hover);
+    }
+  }
+
+  @Override
+  public void showing(final SinglePopupBehavior<?> b ,final Node hover){
+    if(enabled){
+      recorder().showing();
+    }
+  }
+
+  @Override
+  public void shown(final SinglePopupBehavior<?> b ,final Node hover ,final long nanos){
+    final Recorder r = recorder;
+    if(r != null){
+      r.shown(b, hover);
+    }
+  }
+
+  @Override
+  public void hiding(final SinglePopupBehavior<?> b ,final Node node){
+    if(enabled){
+      recorder().hiding();
+    }
+  }
+
+  @Override
+  public void hidden(final SinglePopupBehavior<?> b ,final Node node ,final long nanos){
+    final Recorder r = recorder;
+    if(r != null){
+      r.hidden(b, node);
+    }
+  }
+
+  @Override
+  public void killedByGroup(final BehaviorGroup g ,final SinglePopupBehavior<?> source ,
+      final SinglePopupBehavior<?> b){
+    if(enabled){
+      recorder().killedByGroup(source, b);
+    }
+  }
+
+  /**
+   * イベントを生成し記録する。<br/>
+   * イベントのクラスの読み込みにはJFRの処理が伴うので、記録しない間は読み込まれないように分けている。
+   * 全てJavaFX Application Threadから呼ばれる
+   */
+  private static final class Recorder{
+    /** 計測中のイベント */
+    private UpdateEvent update;
+    private ShowEvent show;
+    private HideEvent hide;
+
+    void activated(final SinglePopupBehavior<?> b ,final Node hover){
+      final ActivationEvent e = new ActivationEvent();
+      if(e.shouldCommit()){
+        e.set(b, hover);
+        e.commit();
+      }
+    }
+
+    void openTimerFired(final SinglePopupBehavior<?> b ,final Node hover){
+      final OpenTimerEvent e = new OpenTimerEvent();
+      if(e.shouldCommit()){
+        e.set(b, hover);
+        e.commit();
+      }
+    }
+
+    void updating(){
+      final UpdateEvent e = new UpdateEvent();
+      if(e.isEnabled()){
+        e.begin();
+        update = e;
+      }
+    }
+
+    void updated(final SinglePopupBehavior<?> b ,final Node hover){
+      final UpdateEvent e = update;
+      if(e != null){
+        update = null;
+        commit(e, b, hover);
+      }
+    }
+
+    void showing(){
+      final ShowEvent e = new ShowEvent();
+      if(e.isEnabled()){
+        e.begin();
+        show = e;
+      }
+    }
+
+    void shown(final SinglePopupBehavior<?> b ,final Node hover){
+      final ShowEvent e = show;
+      if(e != null){
+        show = null;
+        commit(e, b, hover);
+      }
+    }
+
+    void hiding(){
+      final HideEvent e = new HideEvent();
+      if(e.isEnabled()){
+        e.begin();
+        hide = e;
+      }
+    }
+
+    void hidden(final SinglePopupBehavior<?> b ,final Node node){
+      final HideEvent e = hide;
+      if(e != null){
+        hide = null;
+        commit(e, b, node);
+      }
+    }
+
+    void killedByGroup(final SinglePopupBehavior<?> source ,final SinglePopupBehavior<?> b){
+      final GroupKillEvent e = new GroupKillEvent();
+      if(e.shouldCommit()){
+        e.set(b, b.getVisibleNode() != null ? b.getVisibleNode() : b.getHoverNode());
+        e.source = source == null ? null : source.getClass().getName();
+        e.commit();
+      }
+    }
+
+    /** beginしたイベントを終了し、しきい値を超えていれば記録する */
+    private static void commit(final PopupEvent e,final SinglePopupBehavior<?> b,final Node n){
+      e.end();
+      if(e.shouldCommit()){
+        e.set(b, n);
+        e.commit();
+      }
+    }
+  }
+
+  @Category({"JavaFX","Popup"})
+  @StackTrace(false)
+  abstract static class PopupEvent extends Event{
+    @Label("Behavior Class")
+    String behavior;
+    @Label("Node Type")
+    String nodeType;
+    @Label("Node Id")
+    String nodeId;
+
+    final void set(final SinglePopupBehavior<?> b,final Node n){
+      behavior = b.getClass().getName();
+      if(n != null){
+        nodeType = n.getClass().getName();
+        nodeId = n.getId();
+      }
+    }
+  }
+
+  @Name("nodamushi.jfx.popup.Activation")
+  @Label("Popup Activation")
+  static final class ActivationEvent extends PopupEvent{}
+
+  @Name("nodamushi.jfx.popup.OpenTimer")
+  @Label("Popup Open Timer")
+  static final class OpenTimerEvent extends PopupEvent{}
+
+  @Name("nodamushi.jfx.popup.Update")
+  @Label("Popup Update")
+  static final class UpdateEvent extends PopupEvent{}
+
+  @Name("nodamushi.jfx.popup.Show")
+  @Label("Popup Show")
+  static final class ShowEvent extends PopupEvent{}
+
+  @Name("nodamushi.jfx.popup.Hide")
+  @Label("Popup Hide")
+  static final class HideEvent extends PopupEvent{}
+
+  @Name("nodamushi.jfx.popup.GroupKill")
+  @Label("Popup Group Kill")
+  static final class GroupKillEvent extends PopupEvent{
+    @Label("Source Behavior Class")
+    String source;
+  }
+}
@@ -0,0 +1,90 @@
+package nodamushi.jfx.popup;
+
+/**
+ * ポップアップの動作をJava Flight Recorderのイベントとして記録する。<br/>
+ * jdk.jfrが存在する場合は{@link SinglePopupBehavior#getDefaultMetrics()}に初めから登録されているので、
+ * 通常のJFRの設定(.jfcファイルや-XX:StartFlightRecording)で記録を開始するだけで記録される。
+ * イベントの有効、無効やしきい値もJFRの設定で指定する。<br/>
+ * イベントを有効にしたRecordingが動いていない間は{@link PopupMetrics#isEnabled()}がfalseになり、
+ * 時間の計測もイベントの生成も行わない。状態はRecordingの開始、停止の度に更新する。<br/>
+ * <br/>
+ * イベント名<br/>
+ * nodamushi.jfx.popup.Activation 表示待機状態になった<br/>
+ * nodamushi.jfx.popup.OpenTimer 表示するタイマーが動作した<br/>
+ * nodamushi.jfx.popup.Update updatePopupの所要時間<br/>
+ * nodamushi.jfx.popup.Show PopupWindowの表示の所要時間<br/>
+ * nodamushi.jfx.popup.Hide PopupWindowの非表示の所要時間<br/>
+ * nodamushi.jfx.popup.GroupKill グループにより停止させられた<br/>
+ * <br/>
+ * jdk.jfrが存在しない実行環境では何もしない。FlightRecorderPermissionが無い場合は記録しない。
+ * @author nodamushi
+ */
+public final class JfrPopupMetrics{
+
+  private static final boolean AVAILABLE = isJfrPresent();
+  private static PopupMetrics events;
+
+  private JfrPopupMetrics(){}
+
+  private static boolean isJfrPresent(){
+    try{
+      Class.forName("jdk.jfr.Event", false, JfrPopupMetrics.class.getClassLoader());
+      return true;
+    }catch(final ClassNotFoundException | LinkageError e){
+      return false;
+    }
+  }
+
+  /** JFRが利用可能かどうか */
+  public static boolean isAvailable(){
+    return AVAILABLE;
+  }
+
+  /**
+   * JFRのイベントを記録するPopupMetricsを返す。<br/>
+   * インスタンスは一つだけなので、同じBehaviorに何度登録してもイベントは重複しない。
+   * @return JFRが利用できない場合はnull
+   */
+  public static synchronized PopupMetrics create(){
+    if(!AVAILABLE) {
+      return null;
+    }
+    if(events == null){
+      JfrPopupEvents.startListening();
+      events = new JfrPopupEvents();
+    }
+    return events;
+  }
+
+  /**
+   * これ以降に作成される全てのBehaviorでJFRのイベントを記録する。<br/>
+   * 初めから登録されているので、{@link SinglePopupBehavior#setDefaultMetrics(PopupMetrics)}で外した後に戻す場合に用いる。
+   * 既に設定されているデフォルトのリスナーは置き換えず、一緒に通知する。
+   * @return JFRが利用可能で、設定した場合はtrue
+   * @see SinglePopupBehavior#setDefaultMetrics(PopupMetrics)
+   */
+  public static boolean enable(){
+    final PopupMetrics m = create();
+    if(m == null) {
+      return false;
+    }
+    SinglePopupBehavior.setDefaultMetrics(
+        PopupMetrics.combine(SinglePopupBehavior.getDefaultMetrics(), m));
+    return true;
+  }
+
+  /**
+   * behaviorでJFRのイベントを記録する。<br/>
+   * 既に設定されているリスナー({@link PopupStatistics}など)は置き換えず、一緒に通知する。
+   * @param b
+   * @return JFRが利用可能で、設定した場合はtrue
+   */
+  public static boolean install(final SinglePopupBehavior<?> b){
+    final PopupMetrics m = create();
+    if(m == null) {
+      return false;
+    }
+    b.setMetrics(PopupMetrics.combine(b.getMetrics(), m));
+    return true;
+  }
+}
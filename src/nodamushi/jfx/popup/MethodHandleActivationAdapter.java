@@ -0,0 +1,50 @@
+package nodamushi.jfx.popup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+
+import javafx.scene.control.Tooltip;
+
+/**
+ * MethodHandleでTooltip.setActivatedを呼び出すActivationAdapter
+ * @author nodamushi
+ */
+final class MethodHandleActivationAdapter implements ActivationAdapter{
+
+  static final MethodHandleActivationAdapter INSTANCE = new MethodHandleActivationAdapter();
+
+  private final MethodHandle handle;
+
+  private MethodHandleActivationAdapter(){
+    MethodHandle h;
+    try{
+      final Method m = Tooltip.class.getDeclaredMethod("setActivated", boolean.class);
+      m.setAccessible(true);
+      h = MethodHandles.lookup().unreflect(m);
+    }catch(final Exception | LinkageError e){
+      //モジュールによってアクセスが制限されている
+      h = null;
+    }
+    handle = h;
+  }
+
+  @Override
+  public boolean isAvailable(){
+    return handle != null;
+  }
+
+  @Override
+  public void setActivated(final Tooltip t ,final boolean activated){
+    if(handle == null) {
+      return;
+    }
+    try{
+      handle.invokeExact(t, activated);
+    }catch(final RuntimeException | Error e){
+      throw e;
+    }catch(final Throwable e){
+      throw new IllegalStateException(e);
+    }
+  }
+}
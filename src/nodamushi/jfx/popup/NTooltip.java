@@ -1,11 +1,11 @@
 package nodamushi.jfx.popup;
-import static java.lang.Math.*;
 import static javafx.css.StyleConverter.*;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import javafx.beans.InvalidationListener;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ObjectProperty;
@@ -25,7 +25,6 @@ import javafx.css.StyleableDoubleProperty;
 import javafx.css.StyleableObjectProperty;
 import javafx.css.StyleableProperty;
 import javafx.css.StyleableStringProperty;
-import javafx.geometry.NodeOrientation;
 import javafx.scene.AccessibleRole;
 import javafx.scene.Group;
 import javafx.scene.Node;
@@ -39,15 +38,8 @@ import javafx.scene.image.ImageView;
 import javafx.scene.layout.Pane;
 import javafx.scene.text.Font;
 import javafx.scene.text.TextAlignment;
-import javafx.stage.Window;
 import javafx.util.Duration;
 
-import com.sun.javafx.css.StyleManager;
-import com.sun.javafx.css.converters.BooleanConverter;
-import com.sun.javafx.css.converters.EnumConverter;
-import com.sun.javafx.css.converters.SizeConverter;
-import com.sun.javafx.css.converters.StringConverter;
-
 /**
  * ついでに起動時間とかCSSで指定できるTooltipもどきを作ってみた。<br/>
  * 著作権とかライセンスとかやばそう。
@@ -78,6 +70,14 @@ public class NTooltip extends PopupControl{
           "The content of the Popup can't be accessed");
     }
     getStyleClass().setAll("tooltip");
+    final InvalidationListener l = o -> config = null;
+    openDurationProperty.addListener(l);
+    hideDurationProperty.addListener(l);
+    leftDurationProperty.addListener(l);
+    popupNonFocusProperty.addListener(l);
+    hideOnExitProperty.addListener(l);
+    xOffsetProperty.addListener(l);
+    yOffsetProperty.addListener(l);
   }
 
 
@@ -366,6 +366,31 @@ public class NTooltip extends PopupControl{
 
   private static final NTooltipBehavior TOOLTIP_BEHAVIOR=new NTooltipBehavior();
 
+  /**
+   * 設定の解決済みのスナップショット。プロパティやCSSが変更されるとnullになり、次に使うときに作り直す
+   */
+  private Config config;
+
+  /**
+   * 表示に使う設定値。未設定のDurationはBehaviorの値、デフォルト値の順で解決済み
+   */
+  private static final class Config{
+    final Duration open,hide,left;
+    final double xOffset,yOffset;
+    final boolean hideOnExit,popupNonFocus;
+    Config(final Duration open,final Duration hide,final Duration left,
+        final double xOffset,final double yOffset,
+        final boolean hideOnExit,final boolean popupNonFocus){
+      this.open = open;
+      this.hide = hide;
+      this.left = left;
+      this.xOffset = xOffset;
+      this.yOffset = yOffset;
+      this.hideOnExit = hideOnExit;
+      this.popupNonFocus = popupNonFocus;
+    }
+  }
+
 
 
   private static class NTooltipBehavior extends TooltipBehaviorBase<NTooltip>{
@@ -384,62 +409,52 @@ public class NTooltip extends PopupControl{
       super.setActivate(p, hover);
     }
 
+    private Config config(final NTooltip p){
+      Config c = p.config;
+      if(c == null){
+        c = new Config(
+            resolve(p.getOpenDuration(), getOpenDuration(), DEFAULT_OPEN_DURATION),
+            resolve(p.getHideDuration(), getHideDuration(), DEFAULT_HIDE_DURATION),
+            resolve(p.getLeftDuration(), getLeftDuration(), DEFAULT_LEFT_DURATION),
+            p.getXOffset(), p.getYOffset(),
+            p.isHideOnExit(), p.isPopupNonFocus());
+        p.config = c;
+      }
+      return c;
+    }
+
+    private static Duration resolve(final Duration d,final Duration b,final Duration def){
+      return d != null ? d : b != null ? b : def;
+    }
+
     @Override
     protected boolean isPopupOnNonFocusWindow(final NTooltip p ,final Node hover){
-      return p.isPopupNonFocus();
+      return config(p).popupNonFocus;
     }
 
     @Override
     protected boolean isHideOnExit(final NTooltip p ,final Node node){
-      return p.isHideOnExit();
+      return config(p).hideOnExit;
     }
     @Override
     protected void runOpenTimer(final NTooltip p ,final Node hover){
-      Duration d = p.getOpenDuration();
-      if(d==null){
-        d = getOpenDuration();
-      }
-      runOpenTimer(d==null?DEFAULT_OPEN_DURATION:d);
+      runOpenTimer(config(p).open);
     }
 
     @Override
     protected void runHideTimer(final NTooltip p ,final Node hover){
-      Duration d = p.getHideDuration();
-      if(d==null){
-        d = getHideDuration();
-      }
-      runHideTimer(d==null?DEFAULT_HIDE_DURATION:d);
+      runHideTimer(config(p).hide);
     }
 
     @Override
     protected void runLeftTimer(final NTooltip p ,final Node hover){
-      Duration d = p.getLeftDuration();
-      if(d==null){
-        d = getLeftDuration();
-      }
-      runLeftTimer(d==null?DEFAULT_LEFT_DURATION:d);
+      runLeftTimer(config(p).left);
     }
 
     @Override
-    protected void show(final NTooltip p ,final Node hover ,double x ,double y){
-      //あんまり意味は分かってないけど
-      //とりあえずjavafx.scene.control.Tooltipからほぼ引用
-
-      final NodeOrientation nodeOrientation = hover.getEffectiveNodeOrientation();
-      p.getScene().setNodeOrientation(nodeOrientation);
-      if (nodeOrientation == NodeOrientation.RIGHT_TO_LEFT) {
-        x -= p.getWidth();
-      }
-      final Window owner = getWindow(hover);
-      final double ox =p.getXOffset();
-      final double oy =p.getYOffset();
-      p.show(owner, floor(x+ox), floor(y+oy));
-
-      if ((y+TOOLTIP_YOFFSET) > p.getAnchorY()) {
-        p.hide();
-        y -= p.getHeight();
-        p.show(owner, floor(x+ox), floor(y));
-      }
+    protected void show(final NTooltip p ,final Node hover ,final double x ,final double y){
+      final Config c = config(p);
+      showPopup(p, hover, x, y, c.xOffset, c.yOffset);
     }
 
   }
@@ -568,7 +583,7 @@ public class NTooltip extends PopupControl{
       // css might need to be reapplied since font size affects
       // calculated values for styles with relative values
       if(fontSetByCss == false) {
-        NTooltip.this.bridge.impl_reapplyCSS();
+        FxCompat.reapplyCss(NTooltip.this.bridge);
       }
     }
 
@@ -662,7 +677,7 @@ public class NTooltip extends PopupControl{
               final ImageView imageView = (ImageView)graphicNode;
               final Image image = imageView.getImage();
               if (image != null) {
-                final String imageViewUrl = image.impl_getUrl();
+                final String imageViewUrl = FxCompat.getUrl(image);
                 if (url.equals(imageViewUrl)) {
                   return;
                 }
@@ -670,7 +685,7 @@ public class NTooltip extends PopupControl{
 
             }
 
-            final Image img = StyleManager.getInstance().getCachedImage(url);
+            final Image img = FxCompat.getCachedImage(url);
 
             if (img != null) {
               // Note that it is tempting to try to re-use existing ImageView simply by setting
@@ -692,7 +707,7 @@ public class NTooltip extends PopupControl{
           if (graphic instanceof ImageView) {
             final Image image = ((ImageView)graphic).getImage();
             if (image != null) {
-              return image.impl_getUrl();
+              return FxCompat.getUrl(image);
             }
           }
           return null;
@@ -789,7 +804,7 @@ public class NTooltip extends PopupControl{
 
   private static final CssMetaData<CSSBridge,TextAlignment> TEXT_ALIGNMENT =
       new CssMetaData<CSSBridge,TextAlignment>("-fx-text-alignment",
-          new EnumConverter<TextAlignment>(TextAlignment.class),
+          getEnumConverter(TextAlignment.class),
           TextAlignment.LEFT) {
 
     @Override
@@ -805,7 +820,7 @@ public class NTooltip extends PopupControl{
 
   private static final CssMetaData<CSSBridge,OverrunStyle> TEXT_OVERRUN =
       new CssMetaData<CSSBridge,OverrunStyle>("-fx-text-overrun",
-          new EnumConverter<OverrunStyle>(OverrunStyle.class),
+          getEnumConverter(OverrunStyle.class),
           OverrunStyle.ELLIPSIS) {
 
     @Override
@@ -821,7 +836,7 @@ public class NTooltip extends PopupControl{
 
   private static final CssMetaData<CSSBridge,Boolean> WRAP_TEXT =
       new CssMetaData<CSSBridge,Boolean>("-fx-wrap-text",
-          BooleanConverter.getInstance(), Boolean.FALSE) {
+          getBooleanConverter(), Boolean.FALSE) {
 
     @Override
     public boolean isSettable(final CSSBridge cssBridge) {
@@ -836,7 +851,7 @@ public class NTooltip extends PopupControl{
 
   private static final CssMetaData<CSSBridge,String> GRAPHIC =
       new CssMetaData<CSSBridge,String>("-fx-graphic",
-          StringConverter.getInstance()) {
+          getStringConverter()) {
 
     @Override
     public boolean isSettable(final CSSBridge cssBridge) {
@@ -851,7 +866,7 @@ public class NTooltip extends PopupControl{
 
   private static final CssMetaData<CSSBridge,ContentDisplay> CONTENT_DISPLAY =
       new CssMetaData<CSSBridge,ContentDisplay>("-fx-content-display",
-          new EnumConverter<ContentDisplay>(ContentDisplay.class),
+          getEnumConverter(ContentDisplay.class),
           ContentDisplay.LEFT) {
 
     @Override
@@ -867,7 +882,7 @@ public class NTooltip extends PopupControl{
 
   private static final CssMetaData<CSSBridge,Number> GRAPHIC_TEXT_GAP =
       new CssMetaData<CSSBridge,Number>("-fx-graphic-text-gap",
-          SizeConverter.getInstance(), 4.0) {
+          getSizeConverter(), 4.0) {
 
     @Override
     public boolean isSettable(final CSSBridge cssBridge) {
@@ -0,0 +1,245 @@
+package nodamushi.jfx.popup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javafx.util.Duration;
+
+/**
+ * {@link AsyncPopupUpdater}や{@link SinglePopupBehavior#cachedUpdater(java.util.function.Function, java.util.function.BiConsumer)}で
+ * 準備した内容を保持するキャッシュ。<br/>
+ * 最大数を超えると最も長く使われていないものから削除される(LRU)。<br/>
+ * 保存してからttlの間は新しい内容として扱い、そのままポップアップに反映する。
+ * ttlを過ぎてからstaleの間は古い内容を表示しつつ、裏で準備し直す(stale-while-revalidate)。
+ * それを過ぎた内容は破棄する。期限切れの内容は、問い合わせたときか、次に内容を保存するときに削除される。<br/>
+ * キーは削除されるまで強参照で保持される。期限のないキャッシュでは、最大数を超えて削除されるか
+ * {@link PopupContentCache#invalidate(Object)}を呼ぶまで残る。<br/>
+ * 複数のBehaviorで共有できるが、JavaFX Application Threadからのみ利用すること。
+ * @author nodamushi
+ *
+ * @see SinglePopupBehavior#setContentCache(PopupContentCache)
+ */
+public class PopupContentCache{
+
+  private final Map<Object, Entry> map;
+  /** 保存した順に並べた内容。先頭が最も古い */
+  private Entry first,last;
+  private int maxSize;
+  private long ttl,stale;
+  private long hits,staleHits,misses,evictions,expirations;
+
+  /**
+   * 期限のないキャッシュを作る
+   * @param maxSize 最大数
+   */
+  public PopupContentCache(final int maxSize){
+    this(maxSize, null, null);
+  }
+
+  /**
+   * @param maxSize 最大数
+   * @param ttl 新しい内容として扱う時間。nullの場合は期限なし
+   * @param stale ttlを過ぎた後、古い内容を表示しながら準備し直す時間。nullの場合は0
+   */
+  public PopupContentCache(final int maxSize,final Duration ttl,final Duration stale){
+    setMaxSize(maxSize);
+    setTimeToLive(ttl);
+    setStaleWhileRevalidate(stale);
+    //無名クラスの中ではEntryがMap.Entryを指すので、修飾して書く
+    map = new LinkedHashMap<Object, PopupContentCache.Entry>(16, 0.75f, true){
+      private static final long serialVersionUID = 1L;
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Object, PopupContentCache.Entry> e){
+        if(size() > PopupContentCache.this.maxSize){
+          evictions++;
+          unlink(e.getValue());
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * 最大数を設定する
+   * @param maxSize 1以上
+   */
+  public void setMaxSize(final int maxSize){
+    if(maxSize < 1){
+      throw new IllegalArgumentException("maxSize < 1:"+maxSize);
+    }
+    this.maxSize = maxSize;
+  }
+
+  public int getMaxSize(){
+    return maxSize;
+  }
+
+  /**
+   * 新しい内容として扱う時間を設定する
+   * @param ttl nullまたは{@link Duration#INDEFINITE}の場合は期限なし
+   */
+  public void setTimeToLive(final Duration ttl){
+    this.ttl = toNanos(ttl, Long.MAX_VALUE);
+  }
+
+  /**
+   * ttlを過ぎた後、古い内容を表示しながら準備し直す時間を設定する
+   * @param stale nullの場合は0
+   */
+  public void setStaleWhileRevalidate(final Duration stale){
+    this.stale = toNanos(stale, 0);
+  }
+
+  private static long toNanos(final Duration d,final long def){
+    if(d == null) {
+      return def;
+    }
+    if(d.isIndefinite() || d.isUnknown()) {
+      return Long.MAX_VALUE;
+    }
+    return (long)(d.toMillis()*1_000_000d);
+  }
+
+  /** 保持している数 */
+  public int size(){
+    return map.size();
+  }
+
+  /** 全て削除する */
+  public void clear(){
+    map.clear();
+    first = last = null;
+  }
+
+  /**
+   * keyの内容を削除する
+   * @param key
+   */
+  public void invalidate(final Object key){
+    unlink(map.remove(key));
+  }
+
+  /** 新しい内容が見つかった回数 */
+  public long getHitCount(){return hits;}
+  /** 古い内容が見つかり、準備し直した回数 */
+  public long getStaleHitCount(){return staleHits;}
+  /** 見つからなかった回数 */
+  public long getMissCount(){return misses;}
+  /** 最大数を超えて削除された回数 */
+  public long getEvictionCount(){return evictions;}
+  /** 期限切れで削除された回数 */
+  public long getExpirationCount(){return expirations;}
+  /** 見つかった割合(古い内容を含む)。一度も問い合わせがない場合は0 */
+  public double getHitRate(){
+    final long h = hits+staleHits;
+    final long t = h+misses;
+    return t == 0? 0: (double)h/t;
+  }
+  /** 統計情報を0に戻す */
+  public void resetStatistics(){
+    hits = staleHits = misses = evictions = expirations = 0;
+  }
+
+  /**
+   * keyの内容を探し、統計情報を更新する
+   * @param key
+   * @return 見つからない場合と期限切れの場合はnull
+   */
+  Entry lookup(final Object key){
+    final Entry e = map.get(key);
+    if(e == null){
+      misses++;
+      return null;
+    }
+    final long age = System.nanoTime() - e.time;
+    if(age <= ttl){
+      hits++;
+      return e;
+    }
+    if(age - ttl <= stale){
+      staleHits++;
+      e.stale = true;
+      return e;
+    }
+    map.remove(key);
+    unlink(e);
+    expirations++;
+    misses++;
+    return null;
+  }
+
+  /**
+   * 統計情報を変えずに、keyの新しい内容があるかどうかを返す
+   * @param key
+   * @return
+   */
+  boolean isFresh(final Object key){
+    final Entry e = map.get(key);
+    return e != null && System.nanoTime() - e.time <= ttl;
+  }
+
+  void put(final Object key,final Object value){
+    purge();
+    final Entry e = new Entry(key, value);
+    unlink(map.put(key, e));
+    e.prev = last;
+    if(last == null){
+      first = e;
+    }else{
+      last.next = e;
+    }
+    last = e;
+  }
+
+  /**
+   * 期限切れの内容を削除する。<br/>
+   * 保存した時刻の順に並んでいるので、先頭から期限内の内容が見つかるまで削除すればよい。
+   */
+  private void purge(){
+    final long now = System.nanoTime();
+    for(Entry e = first;e != null;e = first){
+      final long age = now - e.time;
+      if(age <= ttl || age - ttl <= stale){
+        return;
+      }
+      map.remove(e.key);
+      unlink(e);
+      expirations++;
+    }
+  }
+
+  private void unlink(final Entry e){
+    if(e == null) {
+      return;
+    }
+    final Entry p = e.prev,n = e.next;
+    if(p == null){
+      if(first == e){
+        first = n;
+      }
+    }else{
+      p.next = n;
+    }
+    if(n == null){
+      if(last == e){
+        last = p;
+      }
+    }else{
+      n.prev = p;
+    }
+    e.prev = e.next = null;
+  }
+
+  static final class Entry{
+    final Object value;
+    final long time = System.nanoTime();
+    boolean stale;
+    private final Object key;
+    private Entry prev,next;
+    Entry(final Object key,final Object value){
+      this.key = key;
+      this.value = value;
+    }
+  }
+}
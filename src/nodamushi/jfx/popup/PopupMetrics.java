@@ -0,0 +1,154 @@
+package nodamushi.jfx.popup;
+
+import javafx.scene.Node;
+import nodamushi.jfx.popup.SinglePopupBehavior.BehaviorGroup;
+
+/**
+ * {@link SinglePopupBehavior}の動作を観測するリスナー。<br/>
+ * {@link SinglePopupBehavior#setMetrics(PopupMetrics)}、
+ * {@link BehaviorGroup#setMetrics(PopupMetrics)}で登録する。
+ * グループに登録したリスナーには、グループに属する全てのBehaviorの動作が通知される。
+ * 登録されていない場合の負荷はnullの確認のみ。
+ * {@link #isEnabled()}がfalseの間は、それに加えてisEnabledの呼び出しのみとなり、時間の計測も行わない。<br/>
+ * 全てのメソッドはJavaFX Application Threadから呼ばれる。
+ * @author nodamushi
+ * @see PopupStatistics
+ */
+public interface PopupMetrics{
+
+  /**
+   * 全てのリスナーに順に通知するPopupMetricsを作る。<br/>
+   * nullと重複は除かれ、まとめたものを渡した場合は展開される。
+   * @param metrics
+   * @return 全てnullの場合はnull。一つだけの場合はそのもの
+   */
+  public static PopupMetrics combine(final PopupMetrics... metrics){
+    return CompositePopupMetrics.of(metrics);
+  }
+
+  /**
+   * 通知を受け取るかどうか。<br/>
+   * falseの間、Behaviorは時間の計測と通知を省略する。
+   * ただし、まとめた他のリスナーが有効な場合は通知されることがある。<br/>
+   * 通知の度に呼ばれるので、状態が変わったときに更新した値を返すこと。
+   * @return 既定はtrue
+   */
+  default boolean isEnabled(){
+    return true;
+  }
+
+  /**
+   * 表示待機状態になった
+   * @param b
+   * @param hover
+   */
+  default void activated(final SinglePopupBehavior<?> b,final Node hover){}
+
+  /**
+   * 表示するタイマーが動作した
+   * @param b
+   * @param hover
+   */
+  default void openTimerFired(final SinglePopupBehavior<?> b,final Node hover){}
+
+  /**
+   * 表示するタイマーが動作したが、{@link SinglePopupBehavior#isDisplayable(javafx.stage.PopupWindow, Node)}
+   * がfalseのため表示しなかった
+   * @param b
+   * @param hover
+   */
+  default void suppressed(final SinglePopupBehavior<?> b,final Node hover){}
+
+  /**
+   * {@link SinglePopupBehavior#updatePopup(javafx.stage.PopupWindow, Node)}を呼び出す直前。
+   * この後に{@link PopupMetrics#updated(SinglePopupBehavior, Node, long)}が呼ばれる
+   * @param b
+   * @param hover
+   */
+  default void updating(final SinglePopupBehavior<?> b,final Node hover){}
+
+  /**
+   * {@link SinglePopupBehavior#updatePopup(javafx.stage.PopupWindow, Node)}にかかった時間
+   * @param b
+   * @param hover
+   * @param nanos
+   */
+  default void updated(final SinglePopupBehavior<?> b,final Node hover,final long nanos){}
+
+  /**
+   * {@link SinglePopupBehavior#show(javafx.stage.PopupWindow, Node, double, double)}を呼び出す直前。
+   * この後に{@link PopupMetrics#shown(SinglePopupBehavior, Node, long)}が呼ばれる
+   * @param b
+   * @param hover
+   */
+  default void showing(final SinglePopupBehavior<?> b,final Node hover){}
+
+  /**
+   * {@link SinglePopupBehavior#show(javafx.stage.PopupWindow, Node, double, double)}にかかった時間
+   * @param b
+   * @param hover
+   * @param nanos
+   */
+  default void shown(final SinglePopupBehavior<?> b,final Node hover,final long nanos){}
+
+  /**
+   * 表示中のポップアップを非表示にする直前。
+   * この後に{@link PopupMetrics#hidden(SinglePopupBehavior, Node, long)}が呼ばれる
+   * @param b
+   * @param node 表示していたNode
+   */
+  default void hiding(final SinglePopupBehavior<?> b,final Node node){}
+
+  /**
+   * 表示中のポップアップを非表示にした。nanosはPopupWindow#hideにかかった時間
+   * @param b
+   * @param node 表示していたNode
+   * @param nanos
+   */
+  default void hidden(final SinglePopupBehavior<?> b,final Node node,final long nanos){}
+
+  /**
+   * {@link AsyncPopupUpdater}の準備が失敗した、またはloadがnullを返した
+   * @param b
+   * @param hover
+   * @param ex 失敗の原因。loadがnullを返した場合はnull
+   */
+  default void loadFailed(final SinglePopupBehavior<?> b,final Node hover,final Throwable ex){}
+
+  /**
+   * {@link PopupPool}のポップアップを全て貸し出していて、他のBehaviorからも取り戻せなかったため、
+   * hoverのポップアップを表示できない
+   * @param b
+   * @param hover
+   */
+  default void poolExhausted(final SinglePopupBehavior<?> b,final Node hover){}
+
+  /**
+   * 表示してからの時間経過で非表示にするタイマーが動作した
+   * @param b
+   * @param node 表示中のNode
+   */
+  default void hideTimerFired(final SinglePopupBehavior<?> b,final Node node){}
+
+  /**
+   * Nodeから離れてからの時間経過で非表示にするタイマーが動作した
+   * @param b
+   * @param node 表示中のNode
+   */
+  default void leftTimerFired(final SinglePopupBehavior<?> b,final Node node){}
+
+  /**
+   * 表示中、または表示待機中の状態で{@link SinglePopupBehavior#kill()}が呼ばれた
+   * @param b
+   */
+  default void killed(final SinglePopupBehavior<?> b){}
+
+  /**
+   * グループ内の他のBehaviorが表示したため停止させられた
+   * @param g
+   * @param source 表示したBehavior
+   * @param b 停止させられたBehavior
+   */
+  default void killedByGroup(final BehaviorGroup g,final SinglePopupBehavior<?> source,
+      final SinglePopupBehavior<?> b){}
+}
@@ -0,0 +1,159 @@
+package nodamushi.jfx.popup;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javafx.stage.PopupWindow;
+
+/**
+ * 複数のBehaviorで共有できるポップアップのプール。<br/>
+ * {@link SinglePopupBehavior#install(javafx.scene.Node, PopupPool)}でインストールしたNodeは、
+ * ポップアップが必要になったときにプールから借り、非表示になったら返す。
+ * 生成されるポップアップの数は最大数を超えない。
+ * 最大数まで貸し出している場合は、他のBehaviorが借りているポップアップを、
+ * 表示中、表示待機中、準備中でないもの、表示待機中や準備中のもの、表示中のものの順に取り戻す。
+ * 表示待機中や表示中のポップアップを取り戻されたBehaviorは、その表示待機や表示を止める。<br/>
+ * JavaFX Application Threadからのみ利用すること。
+ * @author nodamushi
+ *
+ * @param <P>
+ */
+public class PopupPool<P extends PopupWindow>{
+
+  private final Supplier<? extends P> factory;
+  private final Consumer<? super P> reset;
+  private final ArrayDeque<P> idle = new ArrayDeque<>();
+  private int max;
+  private int created;
+  /** Behaviorに貸し出したポップアップの借り手。貸し出し毎に一つ */
+  private final ArrayList<SinglePopupBehavior<?>> holders = new ArrayList<>();
+
+  /**
+   * @param factory ポップアップを生成する
+   * @param reset 返却されたポップアップの内容(テキスト、グラフィック、スタイルなど)を初期化する。null可
+   * @param max 生成するポップアップの最大数
+   */
+  public PopupPool(final Supplier<? extends P> factory,final Consumer<? super P> reset,final int max){
+    if(factory == null){
+      throw new NullPointerException("factory");
+    }
+    this.factory = factory;
+    this.reset = reset;
+    setMax(max);
+  }
+
+  /**
+   * 生成するポップアップの最大数を設定する。<br/>
+   * 既に生成されている数より小さくした場合、返却されたポップアップから破棄される。
+   * @param max 1以上
+   */
+  public void setMax(final int max){
+    if(max < 1){
+      throw new IllegalArgumentException("max < 1:"+max);
+    }
+    this.max = max;
+    while(created > max && !idle.isEmpty()){
+      idle.pop();
+      created--;
+    }
+  }
+
+  public int getMax(){
+    return max;
+  }
+
+  /** 生成され、破棄されていないポップアップの数 */
+  public int getCreatedCount(){
+    return created;
+  }
+
+  /** 貸し出されていないポップアップの数 */
+  public int getIdleCount(){
+    return idle.size();
+  }
+
+  /**
+   * ポップアップを借りる
+   * @return 最大数まで貸し出している場合はnull
+   */
+  public P checkout(){
+    final P p = idle.poll();
+    if(p != null) {
+      return p;
+    }
+    if(created >= max) {
+      return null;
+    }
+    final P n = factory.get();
+    if(n != null){
+      created++;
+    }
+    return n;
+  }
+
+  /**
+   * Behaviorがポップアップを借りる
+   * @param b 借りるBehavior
+   * @param reclaim 最大数まで貸し出している場合に、他のBehaviorから取り戻すかどうか
+   * @return 借りられない場合はnull
+   */
+  P checkout(final SinglePopupBehavior<?> b,final boolean reclaim){
+    P p = checkout();
+    if(p == null && reclaim){
+      p = reclaim(b);
+    }
+    if(p != null){
+      holders.add(b);
+    }
+    return p;
+  }
+
+  private P reclaim(final SinglePopupBehavior<?> b){
+    for(int level=0;level<3;level++){
+      //yieldLeaseの中でholdersが変わる
+      for(final Object o:holders.toArray()){
+        final SinglePopupBehavior<?> h = (SinglePopupBehavior<?>)o;
+        if(h != b && h.yieldLease(this, level)){
+          final P p = checkout();
+          if(p != null) {
+            return p;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Behaviorが借りたポップアップを返す
+   * @param b
+   * @param p
+   */
+  void checkin(final SinglePopupBehavior<?> b,final P p){
+    holders.remove(b);
+    checkin(p);
+  }
+
+  /**
+   * ポップアップを返す。表示中の場合は非表示にしてから初期化する
+   * @param p
+   */
+  public void checkin(final P p){
+    if(p == null) {
+      return;
+    }
+    if(p.isShowing()){
+      p.hide();
+    }
+    if(reset != null){
+      reset.accept(p);
+    }
+    if(created > max){
+      created--;
+      return;
+    }
+    idle.push(p);
+  }
+}
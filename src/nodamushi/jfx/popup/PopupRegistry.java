@@ -0,0 +1,92 @@
+package nodamushi.jfx.popup;
+
+import javafx.scene.Node;
+
+/**
+ * {@link SinglePopupBehavior}がNodeとポップアップを対応づけるための表。<br/>
+ * 値はポップアップそのものとは限らないため、Objectとして扱う。<br/>
+ * 一つのPopupRegistryは一つのBehaviorからのみ利用すること。
+ * @author nodamushi
+ *
+ */
+public interface PopupRegistry{
+
+  /**
+   * nodeに対応づけられた値を返す
+   * @param node
+   * @return 存在しない場合はnull
+   */
+  Object get(Node node);
+
+  /**
+   * nodeに値を対応づける。既に値がある場合は上書きする
+   * @param node
+   * @param value null不可
+   */
+  void put(Node node,Object value);
+
+  /**
+   * nodeに対応づけられた値を削除する
+   * @param node
+   */
+  void remove(Node node);
+
+  /**
+   * Nodeを弱参照で保持し、同一性で比較する表を作る。<br/>
+   * Nodeに{@link Node#getProperties()}のObservableMapを生成させない。<br/>
+   * 値は強参照で保持するので、値からキーのNodeに強参照で辿り着けてはならない。
+   * 辿り着ける場合、そのNodeは表に残り続け回収されない。
+   * 複数のNodeで共有する値の場合は、値から辿り着ける全てのNodeが回収されなくなる。<br/>
+   * {@link TooltipBehaviorBase}はポップアップを{@link javafx.stage.PopupWindow#show(javafx.stage.Window, double, double)}
+   * で表示するので、ownerNodeからは参照されない。ポップアップの内容やRegionMapの値、
+   * 遅延生成の関数がNodeを参照しないようにすること。
+   * 値がNodeを参照する必要がある場合は{@link PopupRegistry#nodeProperties(Object)}を用いる。
+   * @return
+   */
+  public static PopupRegistry weakIdentity(){
+    return new PopupRegistry(){
+      private final WeakIdentityMap<Node, Object> map = new WeakIdentityMap<>();
+      @Override
+      public Object get(final Node node){
+        return map.get(node);
+      }
+      @Override
+      public void put(final Node node ,final Object value){
+        map.put(node, value);
+      }
+      @Override
+      public void remove(final Node node){
+        map.remove(node);
+      }
+    };
+  }
+
+  /**
+   * {@link Node#getProperties()}にkeyで値を保存する表を作る。<br/>
+   * Nodeが値を保持するので、値がNodeを参照していてもNodeは回収される。<br/>
+   * 同じNodeに複数のBehaviorをインストールする場合は、Behavior毎に異なるkeyを用いること。
+   * @param key null不可
+   * @return
+   */
+  public static PopupRegistry nodeProperties(final Object key){
+    if(key == null){
+      throw new NullPointerException("key");
+    }
+    return new PopupRegistry(){
+      @Override
+      public Object get(final Node node){
+        return node.hasProperties()? node.getProperties().get(key): null;
+      }
+      @Override
+      public void put(final Node node ,final Object value){
+        node.getProperties().put(key, value);
+      }
+      @Override
+      public void remove(final Node node){
+        if(node.hasProperties()){
+          node.getProperties().remove(key);
+        }
+      }
+    };
+  }
+}
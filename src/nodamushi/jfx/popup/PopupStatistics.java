@@ -0,0 +1,227 @@
+package nodamushi.jfx.popup;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import javafx.scene.Node;
+import nodamushi.jfx.popup.SinglePopupBehavior.BehaviorGroup;
+
+/**
+ * 回数と所要時間のヒストグラムを集計する{@link PopupMetrics}。<br/>
+ * {@link PopupStatistics#register(SinglePopupBehavior, String)}、
+ * {@link PopupStatistics#register(BehaviorGroup, String)}で
+ * プラットフォームのMBeanServerに登録できる。<br/>
+ * 集計はJavaFX Application Threadで行い、値はJMXのスレッドから読まれる。
+ * 読み出しは厳密なスナップショットではない。
+ * @author nodamushi
+ */
+public class PopupStatistics implements PopupMetrics,PopupStatisticsMBean{
+
+  /** ObjectNameのドメイン */
+  public static final String DOMAIN = "nodamushi.jfx.popup";
+
+  private volatile long activated,openTimer,suppressed,shown,hidden,hideTimer,leftTimer,killed,killedByGroup,loadFailed,poolExhausted;
+  private final Histogram update = new Histogram(),show = new Histogram();
+  private ObjectName name;
+
+  /**
+   * 統計を作成してbehaviorに設定し、MBeanとして登録する。<br/>
+   * 既に設定されているリスナーは置き換えず、一緒に通知する。
+   * @param b
+   * @param name ObjectNameのname属性
+   * @return
+   * @throws JMException
+   */
+  public static PopupStatistics register(final SinglePopupBehavior<?> b,final String name) throws JMException{
+    final PopupStatistics s = new PopupStatistics();
+    s.register("Behavior", name);
+    b.setMetrics(PopupMetrics.combine(b.getMetrics(), s));
+    return s;
+  }
+
+  /**
+   * 統計を作成してグループに設定し、MBeanとして登録する。<br/>
+   * 既に設定されているリスナーは置き換えず、一緒に通知する。
+   * @param g
+   * @param name ObjectNameのname属性
+   * @return
+   * @throws JMException
+   */
+  public static PopupStatistics register(final BehaviorGroup g,final String name) throws JMException{
+    final PopupStatistics s = new PopupStatistics();
+    s.register("BehaviorGroup", name);
+    g.setMetrics(PopupMetrics.combine(g.getMetrics(), s));
+    return s;
+  }
+
+  private void register(final String type,final String name) throws JMException{
+    final ObjectName o = new ObjectName(DOMAIN+":type="+type+",name="+ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, o);
+    this.name = o;
+  }
+
+  /**
+   * MBeanの登録を解除する
+   */
+  public void unregister(){
+    final ObjectName o = name;
+    if(o == null) {
+      return;
+    }
+    name = null;
+    final MBeanServer s = ManagementFactory.getPlatformMBeanServer();
+    try{
+      if(s.isRegistered(o)){
+        s.unregisterMBean(o);
+      }
+    }catch(final JMException e){}
+  }
+
+  /** 登録されているObjectName。登録されていない場合はnull */
+  public ObjectName getObjectName(){
+    return name;
+  }
+
+  //-----------------------------------------------
+  //         PopupMetrics
+  //-----------------------------------------------
+  @Override
+  public void activated(final SinglePopupBehavior<?> b ,final Node hover){
+    activated++;
+  }
+  @Override
+  public void openTimerFired(final SinglePopupBehavior<?> b ,final Node hover){
+    openTimer++;
+  }
+  @Override
+  public void suppressed(final SinglePopupBehavior<?> b ,final Node hover){
+    suppressed++;
+  }
+  @Override
+  public void updated(final SinglePopupBehavior<?> b ,final Node hover ,final long nanos){
+    update.add(nanos);
+  }
+  @Override
+  public void shown(final SinglePopupBehavior<?> b ,final Node hover ,final long nanos){
+    shown++;
+    show.add(nanos);
+  }
+  @Override
+  public void hidden(final SinglePopupBehavior<?> b ,final Node node ,final long nanos){
+    hidden++;
+  }
+  @Override
+  public void loadFailed(final SinglePopupBehavior<?> b ,final Node hover ,final Throwable ex){
+    loadFailed++;
+  }
+  @Override
+  public void poolExhausted(final SinglePopupBehavior<?> b ,final Node hover){
+    poolExhausted++;
+  }
+  @Override
+  public void hideTimerFired(final SinglePopupBehavior<?> b ,final Node node){
+    hideTimer++;
+  }
+  @Override
+  public void leftTimerFired(final SinglePopupBehavior<?> b ,final Node node){
+    leftTimer++;
+  }
+  @Override
+  public void killed(final SinglePopupBehavior<?> b){
+    killed++;
+  }
+  @Override
+  public void killedByGroup(final BehaviorGroup g ,final SinglePopupBehavior<?> source ,
+      final SinglePopupBehavior<?> b){
+    killedByGroup++;
+  }
+
+  //-----------------------------------------------
+  //         MBean
+  //-----------------------------------------------
+  @Override
+  public long getActivatedCount(){return activated;}
+  @Override
+  public long getOpenTimerCount(){return openTimer;}
+  @Override
+  public long getSuppressedCount(){return suppressed;}
+  @Override
+  public long getShownCount(){return shown;}
+  @Override
+  public long getHiddenCount(){return hidden;}
+  @Override
+  public long getHideTimerCount(){return hideTimer;}
+  @Override
+  public long getLeftTimerCount(){return leftTimer;}
+  @Override
+  public long getKilledCount(){return killed;}
+  @Override
+  public long getKilledByGroupCount(){return killedByGroup;}
+  @Override
+  public long getLoadFailedCount(){return loadFailed;}
+  @Override
+  public long getPoolExhaustedCount(){return poolExhausted;}
+  @Override
+  public double getUpdateP50Micros(){return update.percentile(0.5)/1e3;}
+  @Override
+  public double getUpdateP99Micros(){return update.percentile(0.99)/1e3;}
+  @Override
+  public double getUpdateMaxMicros(){return update.max/1e3;}
+  @Override
+  public double getShowP50Micros(){return show.percentile(0.5)/1e3;}
+  @Override
+  public double getShowP99Micros(){return show.percentile(0.99)/1e3;}
+  @Override
+  public double getShowMaxMicros(){return show.max/1e3;}
+
+  @Override
+  public void reset(){
+    activated = openTimer = suppressed = shown = hidden = hideTimer = leftTimer = killed = killedByGroup = loadFailed = poolExhausted = 0;
+    update.reset();
+    show.reset();
+  }
+
+  /**
+   * 2の累乗毎のバケットに分けたナノ秒のヒストグラム。
+   * パーセンタイルはバケットの上限で近似する
+   */
+  private static final class Histogram{
+    private final long[] buckets = new long[64];
+    private volatile long count,max;
+
+    void add(final long nanos){
+      final long n = nanos < 0 ? 0 : nanos;
+      buckets[63-Long.numberOfLeadingZeros(n|1)]++;
+      if(n > max){
+        max = n;
+      }
+      count++;
+    }
+
+    double percentile(final double p){
+      final long c = count;
+      if(c == 0) {
+        return 0;
+      }
+      final long target = (long)Math.ceil(p*c);
+      long sum = 0;
+      for(int i=0;i<buckets.length;i++){
+        sum += buckets[i];
+        if(sum >= target){
+          return Math.min((double)max, Math.pow(2, i+1));
+        }
+      }
+      return max;
+    }
+
+    void reset(){
+      for(int i=0;i<buckets.length;i++){
+        buckets[i] = 0;
+      }
+      count = max = 0;
+    }
+  }
+}
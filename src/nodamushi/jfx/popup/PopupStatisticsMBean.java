@@ -0,0 +1,28 @@
+package nodamushi.jfx.popup;
+
+/**
+ * {@link PopupStatistics}のJMXインターフェース
+ * @author nodamushi
+ */
+public interface PopupStatisticsMBean{
+  long getActivatedCount();
+  long getOpenTimerCount();
+  long getSuppressedCount();
+  long getShownCount();
+  long getHiddenCount();
+  long getHideTimerCount();
+  long getLeftTimerCount();
+  long getKilledCount();
+  long getKilledByGroupCount();
+  long getLoadFailedCount();
+  long getPoolExhaustedCount();
+
+  double getUpdateP50Micros();
+  double getUpdateP99Micros();
+  double getUpdateMaxMicros();
+  double getShowP50Micros();
+  double getShowP99Micros();
+  double getShowMaxMicros();
+
+  void reset();
+}
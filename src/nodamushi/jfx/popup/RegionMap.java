@@ -0,0 +1,368 @@
+package nodamushi.jfx.popup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Canvasなどに描画した図形(矩形、多角形)を登録し、座標からその位置にある図形を引く表。<br/>
+ * {@link SinglePopupBehavior#installRegions(javafx.scene.canvas.Canvas, RegionMap, javafx.stage.PopupWindow)}
+ * で利用する。<br/>
+ * 図形はSTR法でまとめたR-treeで索引付けし、点の検索は図形の数に対して対数時間で行う。
+ * 追加された図形は索引の外で保持し、削除された図形は印を付けるだけにして、
+ * 検索時にそれらが一定数を超えていればまとめて索引を作り直す。
+ * 追加と削除はどちらも定数時間で、大量の図形の追加、削除は検索の前にまとめて行うとよい。<br/>
+ * 図形の範囲は右端と下端を含まないので、幅や高さが0の図形は登録できない。<br/>
+ * 複数の図形が重なる場合は、後から追加したものが優先される。<br/>
+ * スレッドセーフではない。
+ * @author nodamushi
+ *
+ * @param <T> 図形に対応づける値の型
+ */
+public class RegionMap<T>{
+
+  /** R-treeの節の子の数 */
+  private static final int M = 16;
+  /** 索引を作り直さずに、索引の外で保持する図形の数 */
+  private static final int MIN_PENDING = 64;
+
+  /**
+   * 登録された図形
+   * @param <T>
+   */
+  public static final class Region<T>{
+    private final double minX,minY,maxX,maxY;
+    private final double[] xs,ys;
+    private final T payload;
+    private final long order;
+    private RegionMap<T> owner;
+    /** 索引の外で保持しているときの位置。索引に含まれる場合は-1 */
+    private int index = -1;
+
+    private Region(final RegionMap<T> owner,final double minX,final double minY,
+        final double maxX,final double maxY,final double[] xs,final double[] ys,
+        final T payload,final long order){
+      this.owner = owner;
+      this.minX = minX;
+      this.minY = minY;
+      this.maxX = maxX;
+      this.maxY = maxY;
+      this.xs = xs;
+      this.ys = ys;
+      this.payload = payload;
+      this.order = order;
+    }
+
+    /** 図形に対応づけられた値 */
+    public T getPayload(){return payload;}
+    public double getMinX(){return minX;}
+    public double getMinY(){return minY;}
+    public double getMaxX(){return maxX;}
+    public double getMaxY(){return maxY;}
+    /** 多角形かどうか */
+    public boolean isPolygon(){return xs != null;}
+    /** RegionMapから削除されていないかどうか */
+    public boolean isRegistered(){return owner != null;}
+
+    /**
+     * 点が図形の内部にあるかどうか
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean contains(final double x,final double y){
+      if(x < minX || x >= maxX || y < minY || y >= maxY) {
+        return false;
+      }
+      if(xs == null) {
+        return true;
+      }
+      //偶奇規則
+      boolean in = false;
+      final double[] xs = this.xs,ys = this.ys;
+      for(int i=0,j=xs.length-1;i<xs.length;j=i++){
+        if((ys[i] > y) != (ys[j] > y)
+            && x < (xs[j]-xs[i])*(y-ys[i])/(ys[j]-ys[i])+xs[i]){
+          in = !in;
+        }
+      }
+      return in;
+    }
+
+    private double centerX(){return (minX+maxX)*0.5;}
+    private double centerY(){return (minY+maxY)*0.5;}
+  }
+
+  private long order;
+  private int size;
+
+  /** 索引に含まれる図形(STR順) */
+  private Region<T>[] items = newArray(0);
+  /** 索引に含まれ、削除された図形の数 */
+  private int removed;
+  /** 索引の外で保持している追加された図形。削除された図形の位置はnull */
+  private final ArrayList<Region<T>> pending = new ArrayList<>();
+  /** pendingのうち、削除されてnullになっている数 */
+  private int pendingRemoved;
+
+  /** 各段の節の外接矩形。[段][節] 0段目の節は図形をM個ずつ持つ */
+  private double[][] nMinX,nMinY,nMaxX,nMaxY;
+  private int levels;
+
+  @SuppressWarnings({"unchecked","rawtypes"})
+  private static <T> Region<T>[] newArray(final int size){
+    return new Region[size];
+  }
+
+  /**
+   * 矩形を登録する
+   * @param x
+   * @param y
+   * @param width 0より大きい値
+   * @param height 0より大きい値
+   * @param payload
+   * @return 登録した図形
+   * @throws IllegalArgumentException 幅か高さが0以下、またはNaNの場合
+   */
+  public Region<T> add(final double x,final double y,final double width,final double height,final T payload){
+    if(!(width > 0 && height > 0)){
+      throw new IllegalArgumentException("width:"+width+" height:"+height);
+    }
+    return add(new Region<>(this, x, y, x+width, y+height, null, null, payload, order++));
+  }
+
+  /**
+   * 多角形を登録する
+   * @param xs 頂点のx座標
+   * @param ys 頂点のy座標
+   * @param payload
+   * @return 登録した図形
+   * @throws IllegalArgumentException 頂点が3個未満の場合や、外接矩形の幅か高さが0の場合
+   */
+  public Region<T> addPolygon(final double[] xs,final double[] ys,final T payload){
+    if(xs.length != ys.length || xs.length < 3){
+      throw new IllegalArgumentException("invalid polygon");
+    }
+    double minX = Double.POSITIVE_INFINITY,minY = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY,maxY = Double.NEGATIVE_INFINITY;
+    for(int i=0;i<xs.length;i++){
+      minX = Math.min(minX, xs[i]);
+      maxX = Math.max(maxX, xs[i]);
+      minY = Math.min(minY, ys[i]);
+      maxY = Math.max(maxY, ys[i]);
+    }
+    if(!(maxX > minX && maxY > minY)){
+      throw new IllegalArgumentException("empty polygon");
+    }
+    return add(new Region<>(this, minX, minY, maxX, maxY,
+        xs.clone(), ys.clone(), payload, order++));
+  }
+
+  private Region<T> add(final Region<T> r){
+    r.index = pending.size();
+    pending.add(r);
+    size++;
+    return r;
+  }
+
+  /**
+   * 図形を削除する
+   * @param r
+   * @return 削除した場合true
+   */
+  public boolean remove(final Region<T> r){
+    if(r == null || r.owner != this) {
+      return false;
+    }
+    r.owner = null;
+    size--;
+    final int i = r.index;
+    if(i < 0){
+      removed++;
+      return true;
+    }
+    r.index = -1;
+    if(i == pending.size()-1){
+      pending.remove(i);
+    }else{
+      pending.set(i, null);
+      pendingRemoved++;
+      if(pendingRemoved > MIN_PENDING && pendingRemoved > pending.size() >> 1){
+        compactPending();
+      }
+    }
+    return true;
+  }
+
+  /** pendingからnullを取り除き、位置を付け直す */
+  private void compactPending(){
+    final ArrayList<Region<T>> p = pending;
+    int j = 0;
+    for(int i=0,n=p.size();i<n;i++){
+      final Region<T> r = p.get(i);
+      if(r != null){
+        r.index = j;
+        p.set(j++, r);
+      }
+    }
+    p.subList(j, p.size()).clear();
+    pendingRemoved = 0;
+  }
+
+  /** 全ての図形を削除する */
+  public void clear(){
+    for(final Region<T> r:items){
+      r.owner = null;
+    }
+    for(final Region<T> r:pending){
+      if(r != null){
+        r.owner = null;
+        r.index = -1;
+      }
+    }
+    items = newArray(0);
+    pending.clear();
+    pendingRemoved = 0;
+    removed = 0;
+    size = 0;
+    levels = 0;
+    nMinX = nMinY = nMaxX = nMaxY = null;
+  }
+
+  /** 登録されている図形の数 */
+  public int size(){
+    return size;
+  }
+
+  /**
+   * 点を含む図形のうち、最後に追加されたものを返す
+   * @param x
+   * @param y
+   * @return 存在しない場合はnull
+   */
+  public Region<T> find(final double x,final double y){
+    if(pending.size() > MIN_PENDING || removed > MIN_PENDING && removed > items.length >> 2){
+      build();
+    }
+    Region<T> best = null;
+    final ArrayList<Region<T>> p = pending;
+    for(int i=p.size()-1;i>=0;i--){
+      final Region<T> r = p.get(i);
+      if(r != null && r.contains(x, y)){
+        best = r;
+        break;
+      }
+    }
+    final int l = levels;
+    if(l == 0 || best != null) {
+      //索引外の図形は索引内の図形より新しい
+      return best;
+    }
+    return search(l-1, 0, nMinX[l-1].length, x, y, best);
+  }
+
+  private Region<T> search(final int level,final int from,final int to,
+      final double x,final double y,Region<T> best){
+    final double[] minX = nMinX[level],minY = nMinY[level],maxX = nMaxX[level],maxY = nMaxY[level];
+    for(int i=from;i<to;i++){
+      if(x < minX[i] || x >= maxX[i] || y < minY[i] || y >= maxY[i]) {
+        continue;
+      }
+      final int s = i*M;
+      if(level == 0){
+        final Region<T>[] items = this.items;
+        final int e = Math.min(s+M, items.length);
+        for(int j=s;j<e;j++){
+          final Region<T> r = items[j];
+          if((best == null || r.order > best.order) && r.owner == this && r.contains(x, y)){
+            best = r;
+          }
+        }
+      }else{
+        best = search(level-1, s, Math.min(s+M, nMinX[level-1].length), x, y, best);
+      }
+    }
+    return best;
+  }
+
+  /** 索引を作り直す */
+  private void build(){
+    final ArrayList<Region<T>> live = new ArrayList<>(size);
+    for(final Region<T> r:items){
+      if(r.owner == this){
+        live.add(r);
+      }
+    }
+    for(final Region<T> r:pending){
+      if(r != null){
+        r.index = -1;
+        live.add(r);
+      }
+    }
+    pending.clear();
+    pendingRemoved = 0;
+    removed = 0;
+    final Region<T>[] a = live.toArray(newArray(live.size()));
+    items = a;
+    final int n = a.length;
+    if(n == 0){
+      levels = 0;
+      nMinX = nMinY = nMaxX = nMaxY = null;
+      return;
+    }
+    //Sort-Tile-Recursive: x方向で帯に分け、帯の中をy方向で並べる
+    Arrays.sort(a, Comparator.comparingDouble(Region::centerX));
+    final int leaves = (n+M-1)/M;
+    final int slice = (int)Math.ceil(Math.sqrt(leaves))*M;
+    for(int i=0;i<n;i+=slice){
+      Arrays.sort(a, i, Math.min(i+slice, n), Comparator.comparingDouble(Region::centerY));
+    }
+
+    final ArrayList<double[][]> ls = new ArrayList<>();
+    double[][] b = new double[4][leaves];
+    for(int i=0;i<leaves;i++){
+      double x0 = Double.POSITIVE_INFINITY,y0 = Double.POSITIVE_INFINITY;
+      double x1 = Double.NEGATIVE_INFINITY,y1 = Double.NEGATIVE_INFINITY;
+      for(int j=i*M,e=Math.min(j+M, n);j<e;j++){
+        final Region<T> r = a[j];
+        x0 = Math.min(x0, r.minX);
+        y0 = Math.min(y0, r.minY);
+        x1 = Math.max(x1, r.maxX);
+        y1 = Math.max(y1, r.maxY);
+      }
+      b[0][i] = x0;b[1][i] = y0;b[2][i] = x1;b[3][i] = y1;
+    }
+    ls.add(b);
+    while(b[0].length > 1){
+      final int c = b[0].length;
+      final int parents = (c+M-1)/M;
+      final double[][] p = new double[4][parents];
+      for(int i=0;i<parents;i++){
+        double x0 = Double.POSITIVE_INFINITY,y0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY,y1 = Double.NEGATIVE_INFINITY;
+        for(int j=i*M,e=Math.min(j+M, c);j<e;j++){
+          x0 = Math.min(x0, b[0][j]);
+          y0 = Math.min(y0, b[1][j]);
+          x1 = Math.max(x1, b[2][j]);
+          y1 = Math.max(y1, b[3][j]);
+        }
+        p[0][i] = x0;p[1][i] = y0;p[2][i] = x1;p[3][i] = y1;
+      }
+      ls.add(p);
+      b = p;
+    }
+    final int l = ls.size();
+    nMinX = new double[l][];
+    nMinY = new double[l][];
+    nMaxX = new double[l][];
+    nMaxY = new double[l][];
+    for(int i=0;i<l;i++){
+      final double[][] x = ls.get(i);
+      nMinX[i] = x[0];
+      nMinY[i] = x[1];
+      nMaxX[i] = x[2];
+      nMaxY[i] = x[3];
+    }
+    levels = l;
+  }
+}
@@ -0,0 +1,129 @@
+package nodamushi.jfx.popup;
+
+import java.util.List;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.geometry.Rectangle2D;
+import javafx.stage.Screen;
+
+/**
+ * スクリーンの表示可能領域のキャッシュ。<br/>
+ * スクリーンの構成が変わるまで領域を保持し、座標からスクリーンを引くときは
+ * 前回見つかったスクリーンから調べる。<br/>
+ * JavaFX Application Threadからのみ利用する。
+ * @author nodamushi
+ */
+final class ScreenGeometry{
+
+  private static Rectangle2D[] bounds;
+  private static int last;
+  private static boolean listening;
+
+  private static final ListChangeListener<Screen> INVALIDATOR =
+      c -> bounds = null;
+
+  private ScreenGeometry(){}
+
+  private static Rectangle2D[] bounds(){
+    Rectangle2D[] b = bounds;
+    if(b == null){
+      final ObservableList<Screen> screens = Screen.getScreens();
+      if(!listening){
+        screens.addListener(INVALIDATOR);
+        listening = true;
+      }
+      final Screen primary = Screen.getPrimary();
+      final List<Screen> list = screens;
+      //プライマリスクリーンを先頭にする
+      b = new Rectangle2D[Math.max(list.size(), 1)];
+      int i = 0;
+      if(primary != null){
+        b[i++] = primary.getVisualBounds();
+      }
+      for(final Screen s:list){
+        if(s != primary && i < b.length){
+          b[i++] = s.getVisualBounds();
+        }
+      }
+      if(i == 0){
+        return null;
+      }
+      if(i < b.length){
+        final Rectangle2D[] t = new Rectangle2D[i];
+        System.arraycopy(b, 0, t, 0, i);
+        b = t;
+      }
+      bounds = b;
+      last = 0;
+    }
+    return b;
+  }
+
+  /**
+   * 座標を含むスクリーンの表示可能領域を返す
+   * @param x スクリーン座標
+   * @param y スクリーン座標
+   * @return 含むスクリーンが無い場合は最も近いスクリーン。スクリーンが無い場合はnull
+   */
+  static Rectangle2D getVisualBounds(final double x,final double y){
+    final Rectangle2D[] b = bounds();
+    if(b == null){
+      return null;
+    }
+    final Rectangle2D l = b[last];
+    if(l.contains(x, y)){
+      return l;
+    }
+    int near = 0;
+    double d = Double.POSITIVE_INFINITY;
+    for(int i=0;i<b.length;i++){
+      final Rectangle2D r = b[i];
+      if(r.contains(x, y)){
+        last = i;
+        return r;
+      }
+      final double dx = x < r.getMinX()? r.getMinX()-x: x > r.getMaxX()? x-r.getMaxX(): 0;
+      final double dy = y < r.getMinY()? r.getMinY()-y: y > r.getMaxY()? y-r.getMaxY(): 0;
+      final double dd = dx*dx+dy*dy;
+      if(dd < d){
+        d = dd;
+        near = i;
+      }
+    }
+    return b[near];
+  }
+
+  /**
+   * x座標を画面内に収める
+   * @param b 表示可能領域
+   * @param x 左端の座標
+   * @param w 幅
+   * @return
+   */
+  static double clampX(final Rectangle2D b,final double x,final double w){
+    if(x+w > b.getMaxX()){
+      return Math.max(b.getMinX(), b.getMaxX()-w);
+    }
+    return x < b.getMinX()? b.getMinX(): x;
+  }
+
+  /**
+   * y座標を画面内に収める。下にはみ出す場合は、まずカーソルの上に反転する
+   * @param b 表示可能領域
+   * @param y 上端の座標
+   * @param h 高さ
+   * @param cursor カーソルのy座標
+   * @return
+   */
+  static double placeY(final Rectangle2D b,final double y,final double h,final double cursor){
+    if(y+h > b.getMaxY()){
+      final double above = cursor-h;
+      if(above >= b.getMinY()){
+        return above;
+      }
+      return Math.max(b.getMinY(), b.getMaxY()-h);
+    }
+    return y < b.getMinY()? b.getMinY(): y;
+  }
+}
@@ -1,31 +1,47 @@
 package nodamushi.jfx.popup;
 
-import java.lang.ref.WeakReference;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiConsumer;
 import java.util.function.BiPredicate;
+import java.util.function.Function;
 
-import javafx.animation.Animation.Status;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
 import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ReadOnlyProperty;
 import javafx.beans.property.SimpleBooleanProperty;
-import javafx.collections.ObservableList;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
+import javafx.event.EventTarget;
 import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.control.Cell;
 import javafx.scene.control.Tooltip;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.input.PickResult;
 import javafx.stage.PopupWindow;
 import javafx.stage.Window;
+import javafx.stage.WindowEvent;
 import javafx.util.Duration;
 
 /**
@@ -46,17 +62,24 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
   protected void initialize(){
     if(!initialized){
       initialized = true;
-      open = new Timeline();
-      hide = new Timeline();
-      left = new Timeline();
-
-      open.setOnFinished(this::openAction);
-      hide.setOnFinished(this::hideAction);
-      left.setOnFinished(this::leftAction);
+      if(registry == null){
+        registry = PopupRegistry.weakIdentity();
+      }
+      timer = TimerWheel.getDefault();
+      open = new BehaviorTimer(OPEN);
+      hide = new BehaviorTimer(HIDE);
+      left = new BehaviorTimer(LEFT);
+      limit = new BehaviorTimer(WAIT);
 
       move = this::mouseMove;
       exit = this::mouseExited;
       press= this::mousePressed;
+      if(delegated){
+        smove = this::sceneMouseMove;
+        sexit = this::sceneMouseExited;
+        spress= this::sceneMousePressed;
+        scenes = new WeakHashMap<>();
+      }
     }
   }
   /**
@@ -72,11 +95,284 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
     if(!initialized){
       initialize();
     }
+    if(delegated){
+      attachScene(n);
+    }else{
+      attachHandlers(n);
+    }
+    storePopup(n, p);
+  }
+
+  /**
+   * Canvasに描画した図形毎にポップアップするようインストールする。<br/>
+   * マウスの下の図形はmapから検索し、図形が変わると別のNodeに移ったときと同じように
+   * タイマーが動作する。図形の無い場所ではポップアップしない。<br/>
+   * 表示する図形は{@link SinglePopupBehavior#getHoverRegion()}で得られるので、
+   * {@link SinglePopupBehavior#setPopupUpdater(BiConsumer)}などで内容を設定すること。<br/>
+   * mapの座標はCanvasのローカル座標。
+   * @param c
+   * @param map
+   * @param p
+   */
+  public void installRegions(final Canvas c,final RegionMap<?> map,final P p){
+    if(c == null || map == null || p == null) {
+      return;
+    }
+    if(!initialized){
+      initialize();
+    }
+    if(delegated){
+      attachScene(c);
+    }else{
+      if(rmove == null){
+        rmove = this::regionMove;
+        rexit = this::regionExited;
+      }
+      c.addEventHandler(MouseEvent.MOUSE_MOVED, rmove);
+      c.addEventHandler(MouseEvent.MOUSE_EXITED, rexit);
+      c.addEventHandler(MouseEvent.MOUSE_PRESSED, press);
+    }
+    regions = true;
+    storeEntry(c, new RegionPopup<>(p, map));
+  }
+
+  /**
+   * マウスの下にある、{@link SinglePopupBehavior#installRegions(Canvas, RegionMap, PopupWindow)}
+   * で登録した図形
+   * @return 図形の上にない場合はnull
+   */
+  public RegionMap.Region<?> getHoverRegion(){
+    return hoverRegion;
+  }
+
+  /**
+   * 表示中のポップアップの原因となった図形
+   * @return 図形によって表示していない場合はnull
+   */
+  public RegionMap.Region<?> getVisibleRegion(){
+    return visibleRegion;
+  }
+
+  private void regionMove(final MouseEvent e){
+    final Object source = e.getSource();
+    final Object o = source instanceof Node ? loadEntry((Node)source) : null;
+    if(!(o instanceof RegionPopup)){
+      return;
+    }
+    final RegionMap.Region<?> r = ((RegionPopup<?>)o).map.find(e.getX(), e.getY());
+    final RegionMap.Region<?> old = hoverRegion;
+    if(r != old){
+      if(old != null){
+        //別のNodeに移ったときと同じように扱う
+        hoverRegion = null;
+        mouseExited(e);
+      }
+      hoverRegion = r;
+    }
+    if(r != null){
+      mouseMove(e);
+    }else{
+      setMousePosition(e);
+    }
+  }
+
+  private void regionExited(final MouseEvent e){
+    if(hoverRegion != null){
+      hoverRegion = null;
+      mouseExited(e);
+    }else{
+      setMousePosition(e);
+    }
+  }
+
+  private boolean isRegionNode(final Node n){
+    return regions && loadEntry(n) instanceof RegionPopup;
+  }
+
+  private static final class RegionPopup<P extends PopupWindow>{
+    final P popup;
+    final RegionMap<?> map;
+    RegionPopup(final P popup,final RegionMap<?> map){
+      this.popup = popup;
+      this.map = map;
+    }
+  }
+
+  /**
+   * ListView、TableView、TreeViewなどで再利用されるCellにインストールする。<br/>
+   * 同じCellに対して何度呼び出しても、ハンドラの登録は最初の一度だけ行われるので、
+   * CellFactoryの中で呼び出せばよい(updateItemで呼び出す必要はない)。<br/>
+   * ポップアップの内容は表示する直前にCellの現在のアイテムから設定すること。
+   * {@link SinglePopupBehavior#cellItemUpdater(BiConsumer)}を利用できる。<br/>
+   * 空のCellではポップアップしない。表示中、表示待機中にCellのアイテムが変わった場合は停止する。
+   * @param cell
+   * @param p
+   */
+  public void installCell(final Cell<?> cell,final P p){
+    if(cell == null || p == null) {
+      return;
+    }
+    if(initialized){
+      final Object o = loadEntry(cell);
+      if(o != null){
+        if(o != p){
+          storeEntry(cell, p);
+        }
+        return;
+      }
+    }
+    install(cell, p);
+    if(cellItem == null){
+      cellItem = o -> {
+        final ReadOnlyProperty<?> item = (ReadOnlyProperty<?>)o;
+        //次の変更でも通知されるように値を確定させる
+        item.getValue();
+        final Object cell2 = item.getBean();
+        if(cell2 != null && (cell2 == getVisibleNode() || cell2 == getHoverNode())){
+          kill();
+        }
+      };
+    }
+    cell.itemProperty().addListener(cellItem);
+  }
+
+  /**
+   * Cellの現在のアイテムからポップアップの内容を設定するupdaterを作る。<br/>
+   * {@link SinglePopupBehavior#setPopupUpdater(BiConsumer)}に設定する。
+   * Cellでない、または空のCellの場合は何もしない。
+   * @param updater ポップアップとアイテムを受け取る
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  public static <P extends PopupWindow,T> BiConsumer<P, Node> cellItemUpdater(
+      final BiConsumer<? super P, ? super T> updater){
+    return (p,n)->{
+      if(n instanceof Cell){
+        final Cell<?> c = (Cell<?>)n;
+        if(!c.isEmpty()){
+          updater.accept(p, (T)c.getItem());
+        }
+      }
+    };
+  }
+
+  /**
+   * Nodeにマウスがホバーしたとき、ポップアップするようインストールする。<br/>
+   * ポップアップはインストール時には生成せず、表示に必要になったときに初めてfactoryで生成する。<br/>
+   * 生成したポップアップは{@link SinglePopupBehavior#getLazyCacheSize()}個まで保持され、
+   * それを超えると最も長く使われていないものから解放される。
+   * @param n
+   * @param factory Nodeに表示するポップアップを生成する関数
+   * @see SinglePopupBehavior#releasePopup(Node, PopupWindow)
+   */
+  public void install(final Node n,final Function<? super Node, ? extends P> factory){
+    if(n == null || factory == null) {
+      return;
+    }
+    if(!initialized){
+      initialize();
+    }
+    if(delegated){
+      attachScene(n);
+    }else{
+      attachHandlers(n);
+    }
+    LazyPopup<P> l = lastLazy;
+    if(l == null || l.factory != factory){
+      l = new LazyPopup<>(factory);
+      lastLazy = l;
+    }
+    storeEntry(n, l);
+  }
+
+  /**
+   * Nodeにマウスがホバーしたとき、ポップアップするようインストールする。<br/>
+   * ポップアップはNodeには割り当てず、必要になったときにpoolから借り、
+   * 非表示になったとき、または{@link SinglePopupBehavior#kill()}で返す。
+   * プールを使い切っている場合は、同じプールから借りて表示中のポップアップを移った先のNodeに引き継ぐ。
+   * このBehaviorが借りていない場合は、プールを共有する他のBehaviorから取り戻す({@link PopupPool})。
+   * それでも借りられない場合は表示せず、{@link PopupMetrics#poolExhausted(SinglePopupBehavior, Node)}に通知する。
+   * 内容は{@link SinglePopupBehavior#setPopupUpdater(BiConsumer)}などで表示前に設定すること。
+   * @param n
+   * @param pool
+   */
+  public void install(final Node n,final PopupPool<? extends P> pool){
+    if(n == null || pool == null) {
+      return;
+    }
+    if(!initialized){
+      initialize();
+    }
+    if(delegated){
+      attachScene(n);
+    }else{
+      attachHandlers(n);
+    }
+    PooledPopup<P> l = lastPooled;
+    if(l == null || l.pool != pool){
+      l = new PooledPopup<>(pool);
+      lastPooled = l;
+    }
+    storeEntry(n, l);
+  }
+
+  /**
+   * 全てのNodeにインストールする。<br/>
+   * {@link SinglePopupBehavior#setDelegatedDispatch(boolean)}がtrueの場合、
+   * 同じSceneや同じ親を持つNodeについてSceneの登録や待機を一度だけ行うので、
+   * installを繰り返すより速い。
+   * falseの場合はNode毎にEventHandlerを追加するので、installを繰り返すのと同じ処理になり、速くはならない。
+   * 大量のNodeにインストールする場合はScene単位でイベントを受け取るモードを用いること。<br/>
+   * factoryがnullを返したNodeにはインストールしない。
+   * @param nodes
+   * @param factory Nodeに表示するポップアップを返す関数
+   * @see SinglePopupBehavior#install(Node, PopupWindow)
+   */
+  public void installAll(final Collection<? extends Node> nodes,
+      final Function<? super Node, ? extends P> factory){
+    if(nodes == null || factory == null) {
+      return;
+    }
+    if(!initialized){
+      initialize();
+    }
+    final boolean delegated = this.delegated;
+    Scene last = null;
+    Parent waiting = null;
+    for(final Node n:nodes){
+      if(n == null) {
+        continue;
+      }
+      final P p = factory.apply(n);
+      if(p == null) {
+        continue;
+      }
+      if(delegated){
+        final Scene s = n.getScene();
+        if(s == null){
+          //兄弟は同じ親を待つ
+          final Parent parent = n.getParent();
+          if(parent == null || parent != waiting){
+            attachScene(n);
+            waiting = parent;
+          }
+        }else if(s != last){
+          registerScene(s);
+          last = s;
+        }
+      }else{
+        attachHandlers(n);
+      }
+      storePopup(n, p);
+    }
+  }
+
+  private void attachHandlers(final Node n){
     n.addEventHandler(MouseEvent.MOUSE_MOVED, move);
     n.addEventHandler(MouseEvent.MOUSE_EXITED, exit);
     n.addEventHandler(MouseEvent.MOUSE_PRESSED, press);
-    storePopup(n, p);
   }
+
   /**
    * インストールした内容を削除する
    * @param n
@@ -85,17 +381,202 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
     if(n == null || !initialized) {
       return;
     }
-    n.removeEventHandler(MouseEvent.MOUSE_MOVED, move);
-    n.removeEventHandler(MouseEvent.MOUSE_EXITED, exit);
-    n.removeEventHandler(MouseEvent.MOUSE_PRESSED, press);
-    final P p = getPopup(n);
-    if(p!=null && getVisiblePopup() == p && getVisibleNode()==n){
-      p.hide();
-      setVisible(null, null);
-      stopHideTimer();
-      stopLeftTimer();
+    detach(n);
+    releaseIdleLeases();
+  }
+
+  /**
+   * 全てのNodeからインストールした内容を削除する。<br/>
+   * 使われていないプールのポップアップを返すのは、最後に一度だけ行う。
+   * それ以外はuninstallを繰り返すのと同じ処理になる。
+   * @param nodes
+   * @see SinglePopupBehavior#uninstall(Node)
+   */
+  public void uninstallAll(final Collection<? extends Node> nodes){
+    if(nodes == null || !initialized) {
+      return;
+    }
+    for(final Node n:nodes){
+      if(n != null){
+        detach(n);
+      }
+    }
+    releaseIdleLeases();
+  }
+
+  private void detach(final Node n){
+    if(delegated){
+      if(dhover == n){
+        dhover = null;
+      }
+    }else{
+      n.removeEventHandler(MouseEvent.MOUSE_MOVED, move);
+      n.removeEventHandler(MouseEvent.MOUSE_EXITED, exit);
+      n.removeEventHandler(MouseEvent.MOUSE_PRESSED, press);
+      if(rmove != null){
+        n.removeEventHandler(MouseEvent.MOUSE_MOVED, rmove);
+        n.removeEventHandler(MouseEvent.MOUSE_EXITED, rexit);
+      }
+    }
+    if(getVisibleNode()==n){
+      final P p = getPopup(n);
+      if(p!=null && getVisiblePopup() == p){
+        hidePopup(p, n);
+        setVisible(null, null);
+        stopHideTimer();
+        stopLeftTimer();
+      }
     }
     storePopup(n, null);
+    if(cellItem != null && n instanceof Cell){
+      ((Cell<?>)n).itemProperty().removeListener(cellItem);
+    }
+  }
+
+  //-----------------------------------------------
+  //         Delegated dispatch
+  //-----------------------------------------------
+  /**
+   * Scene単位でイベントを受け取るモードにするかどうかを設定する。<br/>
+   * trueの場合、installはNodeにEventHandlerを追加せず、NodeのSceneに一つだけ
+   * イベントフィルタを登録し、ピック結果からインストールされたNodeを探して
+   * {@link SinglePopupBehavior#mouseMove(MouseEvent)}などを呼び出す。
+   * Node毎のコストはポップアップの登録のみになる。
+   * Sceneに追加される前のNodeにインストールした場合は、Nodeの一番上の親がSceneに追加されるのを待つ。<br/>
+   * 最初のinstallより前に設定しなくてはならない。<br/>
+   * インストール後にNodeが別のSceneや、別の親の下に移動した場合は、再度installすること。
+   * @param delegated
+   * @throws IllegalStateException 既にinstallが実行されている場合
+   */
+  public void setDelegatedDispatch(final boolean delegated){
+    if(initialized && this.delegated != delegated){
+      throw new IllegalStateException("already installed");
+    }
+    this.delegated = delegated;
+  }
+  /**
+   * Scene単位でイベントを受け取るモードかどうか
+   * @return
+   * @see SinglePopupBehavior#setDelegatedDispatch(boolean)
+   */
+  public boolean isDelegatedDispatch(){
+    return delegated;
+  }
+
+  private void attachScene(final Node n){
+    final Scene s = n.getScene();
+    if(s != null){
+      registerScene(s);
+      return;
+    }
+    //Sceneに追加されるのを一番上の親で待つ。
+    //同じ親を持つNodeは一つのリスナーを共有するので、Node毎のコストはかからない
+    Node root = n;
+    for(Parent p = n.getParent();p != null;p = p.getParent()){
+      root = p;
+    }
+    if(waitingRoots == null){
+      waitingRoots = new WeakIdentityMap<>();
+      sceneWaiter = new SceneWaiter();
+    }
+    if(waitingRoots.put(root, Boolean.TRUE) == null){
+      root.sceneProperty().addListener(sceneWaiter);
+    }
+  }
+
+  private void registerScene(final Scene s){
+    if(scenes.containsKey(s)) {
+      return;
+    }
+    scenes.put(s, Boolean.TRUE);
+    s.addEventFilter(MouseEvent.MOUSE_MOVED, smove);
+    s.addEventFilter(MouseEvent.MOUSE_EXITED, sexit);
+    s.addEventFilter(MouseEvent.MOUSE_PRESSED, spress);
+  }
+
+  /**
+   * インストールしたNodeの一番上の親がSceneに追加されるのを待ち、一度だけSceneを登録する。<br/>
+   * 待っている親毎に登録するが、インスタンスはBehaviorで一つだけ
+   */
+  private final class SceneWaiter implements ChangeListener<Scene>{
+    @Override
+    public void changed(final ObservableValue<? extends Scene> o ,final Scene old ,final Scene s){
+      if(s == null) {
+        return;
+      }
+      o.removeListener(this);
+      final Object root = ((ReadOnlyProperty<?>)o).getBean();
+      if(waitingRoots.remove(root) != null){
+        registerScene(s);
+      }
+    }
+  }
+
+  /**
+   * マウスイベントのピック結果、またはターゲットから親をたどり、
+   * インストールされているNodeを探す
+   * @param e
+   * @return 見つからない場合はnull
+   */
+  protected Node findInstalledNode(final MouseEvent e){
+    final PickResult r = e.getPickResult();
+    Node n = r == null? null: r.getIntersectedNode();
+    if(n == null){
+      final EventTarget t = e.getTarget();
+      if(t instanceof Node){
+        n = (Node)t;
+      }
+    }
+    while(n != null){
+      if(isInstalled(n)) {
+        return n;
+      }
+      n = n.getParent();
+    }
+    return null;
+  }
+
+  private void sceneMouseMove(final MouseEvent e){
+    final Node n = findInstalledNode(e);
+    final Node old = dhover;
+    if(old != n){
+      dhover = n;
+      if(old != null){
+        if(isRegionNode(old)){
+          regionExited(e.copyFor(old, old));
+        }else{
+          mouseExited(e.copyFor(old, old));
+        }
+      }
+    }
+    if(n != null){
+      if(isRegionNode(n)){
+        regionMove(e.copyFor(n, n));
+      }else{
+        mouseMove(e.copyFor(n, n));
+      }
+    }else{
+      setMousePosition(e);
+    }
+  }
+
+  private void sceneMouseExited(final MouseEvent e){
+    final Node old = dhover;
+    if(old != null && old.getScene() == e.getSource()){
+      dhover = null;
+      if(isRegionNode(old)){
+        regionExited(e.copyFor(old, old));
+      }else{
+        mouseExited(e.copyFor(old, old));
+      }
+    }
+  }
+
+  private void sceneMousePressed(final MouseEvent e){
+    final Node n = findInstalledNode(e);
+    if(n != null){
+      mousePressed(e.copyFor(n, n));
+    }
   }
 
   //-----------------------------------------------
@@ -134,8 +615,11 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
    * @return
    */
   protected boolean isDisplayable(final P p,final Node hover){
+    if(hover instanceof Cell && ((Cell<?>)hover).isEmpty()){
+      return false;
+    }
     final Window w = getWindow(hover);
-    return w != null && isWindowHierarchyVisible(hover)
+    return w != null && VisibilityTracker.isTreeVisible(hover)
         && (isPopupOnNonFocusWindow(p,hover)|| hasFocus(w)) && checkDisplayable(p, hover);
   }
   /**
@@ -151,32 +635,481 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
     return isPopupOnNonFocusWindow();
   }
 
-  /**
-   * 表示する前に、ポップアップの内容を更新するBiConsumerを登録する
-   * @param updater
-   */
-  public void setPopupUpdater(final BiConsumer<? super P, ? super Node> updater){
-    this.update = updater;
+  /**
+   * 表示する前に、ポップアップの内容を更新するBiConsumerを登録する
+   * @param updater
+   */
+  public void setPopupUpdater(final BiConsumer<? super P, ? super Node> updater){
+    this.update = updater;
+  }
+
+  /**
+   * {@link SinglePopupBehavior#setPopupUpdater(BiConsumer)}で設定された内容を返す
+   * @return
+   * @see SinglePopupBehavior#setPopupUpdater(BiConsumer)
+   */
+  public BiConsumer<? super P, ? super Node> getPopupUpdater(){
+    return update;
+  }
+  /**
+   * Nodeから求めた内容を{@link SinglePopupBehavior#getContentCache()}に保持し、
+   * ポップアップに反映するupdaterを作る。<br/>
+   * {@link SinglePopupBehavior#setPopupUpdater(BiConsumer)}に設定する。
+   * キャッシュに新しい内容がある場合はcomputeを呼ばずにその内容を反映する。
+   * 同期の処理なので裏で準備し直すことはできず、古い内容はその場で求め直す。<br/>
+   * キャッシュが設定されていない場合や、キーがnullの場合は毎回computeで求める。
+   * computeがnullを返した場合は保持しない。
+   * @param compute Nodeから内容を求める関数。JavaFX Application Threadで呼び出される
+   * @param apply 内容をポップアップに反映する
+   * @return
+   * @see SinglePopupBehavior#setContentKey(Function)
+   */
+  public <T> BiConsumer<P, Node> cachedUpdater(final Function<? super Node, ? extends T> compute,
+      final BiConsumer<? super P, ? super T> apply){
+    return (p,n)->{
+      final PopupContentCache c = getContentCache();
+      final Object key = c == null? null: getContentKey(n);
+      if(key == null){
+        apply.accept(p, compute.apply(n));
+        return;
+      }
+      final PopupContentCache.Entry e = c.lookup(key);
+      final T v;
+      if(e != null && !e.stale){
+        @SuppressWarnings("unchecked")
+        final T t = (T)e.value;
+        v = t;
+      }else{
+        v = compute.apply(n);
+        if(v != null){
+          c.put(key, v);
+        }
+      }
+      apply.accept(p, v);
+    };
+  }
+
+  /**
+   * popupUpdaterが登録されていれば、更新を行う
+   * @param p 表示するポップアップ
+   * @param node マウスがホバーされているノード
+   * @see SinglePopupBehavior#setPopupUpdater(BiConsumer)
+   */
+  protected void updatePopup(final P p,final Node node){
+    final BiConsumer<? super P, ? super Node> u = getPopupUpdater();
+    if(u!=null){
+      u.accept(p, node);
+    }
+  }
+
+  //-----------------------------------------------
+  //         Async update
+  //-----------------------------------------------
+  /**
+   * 表示する前に、ポップアップの内容を非同期に準備するAsyncPopupUpdaterを登録する。<br/>
+   * 登録されている場合、ポップアップは準備が終わってから表示される。
+   * マウスが離れたとき、押されたとき、{@link SinglePopupBehavior#kill()}が呼ばれたときは
+   * 準備中の処理を取り消す。実行中の処理を止めるには、updaterが{@link AsyncPopupUpdater.Cancellation}を確認すること。<br/>
+   * 準備に失敗した場合は{@link AsyncPopupUpdater#failed(PopupWindow, Node, Throwable)}と
+   * {@link PopupMetrics#loadFailed(SinglePopupBehavior, Node, Throwable)}に通知する。
+   * @param updater null可
+   * @see SinglePopupBehavior#setAsyncExecutor(Executor)
+   * @see SinglePopupBehavior#setAsyncTimeout(Duration)
+   */
+  public void setAsyncPopupUpdater(final AsyncPopupUpdater<? super P, ?> updater){
+    cancelAsync();
+    this.asyncUpdater = updater;
+  }
+  /**
+   * {@link SinglePopupBehavior#setAsyncPopupUpdater(AsyncPopupUpdater)}で設定された内容を返す
+   * @return
+   */
+  public AsyncPopupUpdater<? super P, ?> getAsyncPopupUpdater(){
+    return asyncUpdater;
+  }
+  /**
+   * AsyncPopupUpdaterに渡すExecutorを設定する。<br/>
+   * nullの場合は{@link ForkJoinPool#commonPool()}を用いる。
+   * 仮想スレッドが使える環境ではそのExecutorを渡すとよい。
+   * @param executor null可
+   */
+  public void setAsyncExecutor(final Executor executor){
+    this.asyncExecutor = executor;
+  }
+  /**
+   * AsyncPopupUpdaterに渡すExecutor
+   * @return
+   */
+  public Executor getAsyncExecutor(){
+    return asyncExecutor == null? ForkJoinPool.commonPool(): asyncExecutor;
+  }
+  /**
+   * 非同期の準備がこの時間を過ぎても終わらない場合、
+   * {@link SinglePopupBehavior#setPlaceholderUpdater(BiConsumer)}で設定した内容でポップアップを表示する。<br/>
+   * 準備が終わると表示中のポップアップに内容を反映する。
+   * @param d nullまたは{@link Duration#INDEFINITE}の場合は準備が終わるまで待つ
+   */
+  public void setAsyncTimeout(final Duration d){
+    this.asyncTimeout = d;
+  }
+  /**
+   * {@link SinglePopupBehavior#setAsyncTimeout(Duration)}で設定された内容を返す
+   * @return
+   */
+  public Duration getAsyncTimeout(){
+    return asyncTimeout;
+  }
+  /**
+   * 非同期の準備が{@link SinglePopupBehavior#getAsyncTimeout()}までに終わらなかったとき、
+   * 仮の内容をポップアップに設定するBiConsumerを登録する。
+   * @param placeholder nullの場合は準備が終わるまで表示しない
+   */
+  public void setPlaceholderUpdater(final BiConsumer<? super P, ? super Node> placeholder){
+    this.placeholder = placeholder;
+  }
+  /**
+   * {@link SinglePopupBehavior#setPlaceholderUpdater(BiConsumer)}で設定された内容を返す
+   * @return
+   */
+  public BiConsumer<? super P, ? super Node> getPlaceholderUpdater(){
+    return placeholder;
+  }
+
+  private void requestAsync(final P p,final Node n){
+    AsyncRequest<?> r = async;
+    if(r != null && r.popup == p && r.node == n && !r.waiting && !r.shown){
+      //先読み済み
+      r.waiting = true;
+      if(r.done){
+        r.finish();
+        return;
+      }
+    }else{
+      cancelAsync();
+      final AsyncPopupUpdater<? super P, ?> u = getAsyncPopupUpdater();
+      final PopupContentCache c = getContentCache();
+      final Object key = c == null? null: getContentKey(n);
+      if(key != null){
+        final PopupContentCache.Entry e = c.lookup(key);
+        if(e != null){
+          applyCached(u, p, n, e.value);
+          display(p, n);
+          if(e.stale){
+            r = newRequest(u, p, n);
+            r.setCache(c, key);
+            r.shown = true;
+            r.revalidate = true;
+            setAsync(r);
+            r.start();
+          }
+          return;
+        }
+      }
+      r = newRequest(u, p, n);
+      r.setCache(c, key);
+      setAsync(r);
+      r.waiting = true;
+      r.start();
+    }
+    if(async == r && !r.done){
+      final Duration d = getAsyncTimeout();
+      if(d != null && !d.isIndefinite()){
+        runTimer(d, limit);
+      }
+    }
+  }
+
+  private <T> AsyncRequest<T> newRequest(final AsyncPopupUpdater<? super P, T> u,final P p,final Node n){
+    return new AsyncRequest<>(u, p, n);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <P extends PopupWindow,T> void applyCached(final AsyncPopupUpdater<P, T> u,
+      final P p,final Node n,final Object value){
+    u.apply(p, n, (T)value);
+  }
+
+  /**
+   * {@link AsyncPopupUpdater}の結果を保持するキャッシュを設定する。<br/>
+   * 新しい内容が見つかった場合は非同期の処理をせずにすぐに表示し、
+   * 古い内容の場合はそれを表示しながら準備し直す。
+   * @param cache null可
+   * @see SinglePopupBehavior#setContentKey(Function)
+   */
+  public void setContentCache(final PopupContentCache cache){
+    this.contentCache = cache;
+  }
+  /**
+   * {@link SinglePopupBehavior#setContentCache(PopupContentCache)}で設定された内容を返す
+   * @return
+   */
+  public PopupContentCache getContentCache(){
+    return contentCache;
+  }
+  /**
+   * キャッシュのキーをNodeから求める関数を設定する。<br/>
+   * 設定されていない場合はNodeそのものをキーにする。
+   * ただし{@link SinglePopupBehavior#installRegions(Canvas, RegionMap, PopupWindow)}でインストールしたCanvasでは、
+   * 図形毎に内容が異なるので、Nodeと{@link SinglePopupBehavior#getHoverRegion()}の組をキーにする。<br/>
+   * キャッシュはキーを強参照で保持するので、Nodeをキーにすると、シーンから取り除いたNodeも
+   * 内容が期限切れで削除されるか、最大数を超えて追い出されるまで回収されない。
+   * 期限切れの内容は次に内容を保存するときに削除されるが、期限のないキャッシュでは追い出されるまで残る。
+   * Nodeを大量に入れ替える場合は、Nodeを参照しないキー(データのIDなど)を返す関数を設定するか、
+   * 取り除いたNodeについて{@link PopupContentCache#invalidate(Object)}を呼ぶこと。<br/>
+   * 関数の中でも{@link SinglePopupBehavior#getHoverRegion()}で図形を得られる。
+   * @param key nullを返した場合はキャッシュを用いない
+   */
+  public void setContentKey(final Function<? super Node, ?> key){
+    this.contentKey = key;
+  }
+  /**
+   * {@link SinglePopupBehavior#setContentKey(Function)}で設定された内容を返す
+   * @return
+   */
+  public Function<? super Node, ?> getContentKey(){
+    return contentKey;
+  }
+  /**
+   * nodeに対するキャッシュのキーを返す
+   * @param node
+   * @return
+   */
+  protected Object getContentKey(final Node node){
+    final Function<? super Node, ?> f = getContentKey();
+    if(f != null){
+      return f.apply(node);
+    }
+    final RegionMap.Region<?> r = hoverRegion;
+    return r != null && isRegionNode(node)? new RegionKey(node, r): node;
+  }
+
+  /** 図形毎のキャッシュのキー */
+  private static final class RegionKey{
+    private final Node node;
+    private final RegionMap.Region<?> region;
+    RegionKey(final Node node,final RegionMap.Region<?> region){
+      this.node = node;
+      this.region = region;
+    }
+    @Override
+    public int hashCode(){
+      return System.identityHashCode(node)*31 + System.identityHashCode(region);
+    }
+    @Override
+    public boolean equals(final Object o){
+      if(!(o instanceof RegionKey)) {
+        return false;
+      }
+      final RegionKey k = (RegionKey)o;
+      return k.node == node && k.region == region;
+    }
+  }
+
+  /** 準備中の非同期の更新を取り消す */
+  private void cancelAsync(){
+    final AsyncRequest<?> r = async;
+    if(r != null){
+      setAsync(null);
+      timer.cancel(limit);
+      r.cancel();
+    }
+  }
+
+  /**
+   * 表示待機中になったNodeについて、先読みを開始する
+   * @param p
+   * @param hover
+   */
+  private void prefetch(final P p,final Node hover){
+    if(!isPrefetch()) {
+      return;
+    }
+    final AsyncPopupUpdater<? super P, ?> u = getAsyncPopupUpdater();
+    if(u == null) {
+      return;
+    }
+    final AsyncRequest<?> r = async;
+    if(r != null && r.popup == p && r.node == hover) {
+      return;
+    }
+    cancelAsync();
+    final PopupContentCache c = getContentCache();
+    final Object key = c == null? null: getContentKey(hover);
+    if(key != null && c.isFresh(key)) {
+      return;
+    }
+    final AsyncRequest<?> n = newRequest(u, p, hover);
+    n.setCache(c, key);
+    setAsync(n);
+    n.start();
+  }
+
+  private void asyncTimeout(){
+    final AsyncRequest<?> r = async;
+    if(r == null || r.done || !r.waiting) {
+      return;
+    }
+    final BiConsumer<? super P, ? super Node> ph = getPlaceholderUpdater();
+    if(ph == null || !isDisplayable(r.popup, r.node)) {
+      return;
+    }
+    ph.accept(r.popup, r.node);
+    r.waiting = false;
+    r.shown = true;
+    display(r.popup, r.node);
   }
 
-  /**
-   * {@link SinglePopupBehavior#setPopupUpdater(BiConsumer)}で設定された内容を返す
-   * @return
-   * @see SinglePopupBehavior#setPopupUpdater(BiConsumer)
-   */
-  public BiConsumer<? super P, ? super Node> getPopupUpdater(){
-    return update;
-  }
-  /**
-   * popupUpdaterが登録されていれば、更新を行う
-   * @param p 表示するポップアップ
-   * @param node マウスがホバーされているノード
-   * @see SinglePopupBehavior#setPopupUpdater(BiConsumer)
-   */
-  protected void updatePopup(final P p,final Node node){
-    final BiConsumer<? super P, ? super Node> u = getPopupUpdater();
-    if(u!=null){
-      u.accept(p, node);
+  /** 一回分の非同期の更新 */
+  private final class AsyncRequest<T> implements BiConsumer<T, Throwable>,AsyncPopupUpdater.Cancellation{
+    final AsyncPopupUpdater<? super P, T> updater;
+    final P popup;
+    final Node node;
+    /** 準備が終わったら表示する */
+    boolean waiting;
+    /** プレースホルダーで表示済み */
+    boolean shown;
+    boolean done;
+    /** 他のスレッドからも読まれる */
+    private volatile boolean cancelled;
+    private CompletableFuture<? extends T> future;
+    private T value;
+    private boolean failed;
+    private Throwable error;
+    /** 取り消されたときに実行する処理。thisで同期する */
+    private ArrayList<Runnable> onCancel;
+    private PopupContentCache cache;
+    private Object key;
+    /** キャッシュの古い内容を表示した後の再検証 */
+    boolean revalidate;
+    /** 取り消された後もキャッシュの更新のために結果を待つ */
+    private boolean detached;
+
+    AsyncRequest(final AsyncPopupUpdater<? super P, T> updater,final P popup,final Node node){
+      this.updater = updater;
+      this.popup = popup;
+      this.node = node;
+    }
+
+    void setCache(final PopupContentCache cache,final Object key){
+      if(key != null){
+        this.cache = cache;
+        this.key = key;
+      }
+    }
+
+    void start(){
+      final CompletableFuture<? extends T> f = updater.load(popup, node, getAsyncExecutor(), this);
+      if(f == null){
+        complete(null, null, true);
+        return;
+      }
+      future = f;
+      f.whenComplete(this);
+    }
+
+    @Override
+    public void accept(final T v ,final Throwable ex){
+      if(Platform.isFxApplicationThread()){
+        complete(v, ex, false);
+      }else{
+        Platform.runLater(()->complete(v, ex, false));
+      }
+    }
+
+    private void complete(final T v,final Throwable ex,final boolean empty){
+      if(cancelled) {
+        return;
+      }
+      done = true;
+      value = v;
+      failed = ex != null || empty;
+      error = ex instanceof CompletionException && ex.getCause() != null? ex.getCause(): ex;
+      if(!failed && cache != null){
+        cache.put(key, v);
+      }
+      if(detached) {
+        return;
+      }
+      if(waiting || shown){
+        finish();
+      }
+    }
+
+    void finish(){
+      if(async != this) {
+        return;
+      }
+      setAsync(null);
+      timer.cancel(limit);
+      if(failed) {
+        fail();
+        return;
+      }
+      if(shown){
+        if(getVisiblePopup() == popup && getVisibleNode() == node){
+          updater.apply(popup, node, value);
+        }
+      }else if(isDisplayable(popup, node)){
+        updater.apply(popup, node, value);
+        display(popup, node);
+      }
+    }
+
+    /** 失敗を通知し、updaterが望めばポップアップを表示する */
+    private void fail(){
+      final PopupMetrics m = metrics;
+      if(m != null && m.isEnabled()){
+        m.loadFailed(SinglePopupBehavior.this, node, error);
+      }
+      if(shown){
+        if(getVisiblePopup() == popup && getVisibleNode() == node){
+          updater.failed(popup, node, error);
+        }
+      }else if(isDisplayable(popup, node) && updater.failed(popup, node, error)){
+        display(popup, node);
+      }
+    }
+
+    void cancel(){
+      if(revalidate && !done){
+        //古い内容の再検証はキャッシュのために続ける
+        detached = true;
+        return;
+      }
+      final ArrayList<Runnable> l;
+      synchronized(this){
+        cancelled = true;
+        l = onCancel;
+        onCancel = null;
+      }
+      if(l != null){
+        for(final Runnable r:l){
+          r.run();
+        }
+      }
+      //CompletableFutureは実行中の処理に割り込まないので、止めるのはupdaterの役目
+      if(future != null){
+        future.cancel(true);
+      }
+    }
+
+    @Override
+    public boolean isCancelled(){
+      return cancelled;
+    }
+
+    @Override
+    public void onCancel(final Runnable r){
+      synchronized(this){
+        if(!cancelled){
+          if(onCancel == null){
+            onCancel = new ArrayList<>(1);
+          }
+          onCancel.add(r);
+          return;
+        }
+      }
+      r.run();
     }
   }
 
@@ -226,29 +1159,37 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
     if(p == null) {
       return;
     }
+    final AsyncRequest<?> r = async;
+    if(r != null && r.waiting && r.popup == p && r.node == hover){
+      return;
+    }
+    if(scope != null){
+      joinScopedGroup(hover);
+    }
     final P v = getVisiblePopup();
     final boolean othershow = isOtherBehaviorsShowing();
     if(othershow || v!=null){
-      if((othershow || (p!=v || hover != getVisibleNode()))
+      if((othershow || (p!=v || hover != getVisibleNode() || hoverRegion != visibleRegion))
           && isDisplayable(p, hover)){
-        if(v!=null){
-          v.hide();
-        }
-        stopLeftTimer();
-        stopOpenTimer();
-        final double x = getLastMouseX();
-        final double y = getLastMouseY();
-        updatePopup(p, hover);
-        show(p, hover, x, y);
-        killOtherBehaviors();
-        setVisible(p, hover);
-        runHideTimer(p, hover);
+        open(p, hover);
       }
     }else{
+      if(r != null && r.waiting){
+        cancelAsync();
+      }
+      if(hover == getHoverNode() && p == getActivatePopup() && isDwell()){
+        final double t = getDwellThreshold();
+        final double dx = x - dwellX, dy = y - dwellY;
+        if(t <= 0 || dx*dx+dy*dy <= t*t){
+          return;
+        }
+      }
       stopLeftTimer();
       stopHideTimer();
       setActivate(p, hover);
       runOpenTimer(p, hover);
+      dwellX = x;
+      dwellY = y;
     }
 
   }
@@ -258,6 +1199,7 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
    */
   protected void mouseExited(final MouseEvent e){
     setMousePosition(e);
+    cancelAsync();
     final P v = getVisiblePopup();
     if(v!=null){
       if(isHideOnExit(v,getVisibleNode())){
@@ -272,6 +1214,7 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
       stopLeftTimer();
       stopHideTimer();
       setActivate(null, null);
+      releaseIdleLeases();
     }
   }
 
@@ -309,18 +1252,79 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
     final Node n = getHoverNode();
     setActivate(null, null);
     if(isDisplayable(p, n)){
+      open(p, n);
+    }else{
+      cancelAsync();
+      final PopupMetrics m = metrics;
+      if(m != null && m.isEnabled()){
+        m.suppressed(this, n);
+      }
+    }
+  }
+
+  /**
+   * 非同期の更新が登録されていれば準備を開始し、そうでなければすぐにpを表示する
+   * @param p
+   * @param n
+   */
+  private void open(final P p,final Node n){
+    if(getAsyncPopupUpdater() != null){
+      //表示中のポップアップは準備が終わるまで残すが、
+      //そのLeft TimerやHide Timerのkillで準備が取り消されないように止める
       stopLeftTimer();
-      stopOpenTimer();
-      final double x = getLastMouseX();
-      final double y = getLastMouseY();
+      stopHideTimer();
+      requestAsync(p, n);
+    }else{
+      display(p, n);
+    }
+  }
+
+  /**
+   * 表示中のポップアップを非表示にして、pを表示する
+   * @param p
+   * @param n
+   */
+  private void display(final P p,final Node n){
+    final P v = getVisiblePopup();
+    if(v!=null){
+      hidePopup(v, getVisibleNode());
+    }
+    stopLeftTimer();
+    stopOpenTimer();
+    final double x = getLastMouseX();
+    final double y = getLastMouseY();
+    final PopupMetrics m = metrics;
+    if(m == null || !m.isEnabled()){
       updatePopup(p, n);
       show(p, n, x, y);
-      killOtherBehaviors();
-      setVisible(p, n);
-      stopLeftTimer();
-      runHideTimer(p, n);
+    }else{
+      m.updating(this, n);
+      final long t0 = System.nanoTime();
+      updatePopup(p, n);
+      m.updated(this, n, System.nanoTime()-t0);
+      m.showing(this, n);
+      final long t1 = System.nanoTime();
+      show(p, n, x, y);
+      m.shown(this, n, System.nanoTime()-t1);
+    }
+    killOtherBehaviors();
+    visibleRegion = hoverRegion;
+    setVisible(p, n);
+    runHideTimer(p, n);
+    releaseIdleLeases();
+  }
+  private void hidePopup(final P v,final Node n){
+    final PopupMetrics m = metrics;
+    if(m == null || !m.isEnabled()){
+      v.hide();
+    }else{
+      m.hiding(this, n);
+      final long t = System.nanoTime();
+      v.hide();
+      m.hidden(this, n, System.nanoTime()-t);
     }
   }
+
   /**
    * 表示してからの時間経過でポップアップを非表示にするタイマーのアクション
    * @param e
@@ -336,11 +1340,38 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
     kill();
   }
 
-  private static boolean isStopped(final Timeline t){
-    return t.getStatus() == Status.STOPPED;
+  private static final int OPEN = 0, HIDE = 1, LEFT = 2, WAIT = 3;
+
+  /** open,hide,leftの各タイマー。共有の{@link TimerWheel}で動く */
+  private final class BehaviorTimer extends TimerWheel.Task{
+    private final int kind;
+    BehaviorTimer(final int kind){this.kind = kind;}
+    @Override
+    protected void run(){
+      final ActionEvent e = new ActionEvent(SinglePopupBehavior.this, null);
+      final PopupMetrics m = metrics;
+      if(m != null && m.isEnabled()){
+        switch(kind){
+          case OPEN:m.openTimerFired(SinglePopupBehavior.this, getHoverNode());break;
+          case HIDE:m.hideTimerFired(SinglePopupBehavior.this, getVisibleNode());break;
+          case LEFT:m.leftTimerFired(SinglePopupBehavior.this, getVisibleNode());break;
+          default:break;
+        }
+      }
+      switch(kind){
+        case OPEN:openAction(e);break;
+        case HIDE:hideAction(e);break;
+        case LEFT:leftAction(e);break;
+        default:asyncTimeout();break;
+      }
+    }
+  }
+
+  private static boolean isStopped(final TimerWheel.Task t){
+    return !t.isScheduled();
   }
-  private static boolean isRunning(final Timeline t){
-    return t.getStatus() == Status.RUNNING;
+  private static boolean isRunning(final TimerWheel.Task t){
+    return t.isScheduled();
   }
   /**
    * ポップアップを表示するタイマーが動いているかどうか
@@ -373,21 +1404,8 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
    */
   protected final boolean isLeftStopped(){return isStopped(left);}
 
-  private static void runTimer(final Duration d,final Timeline t){
-    if(!isStopped(t)) {
-      t.stop();
-    }
-    final ObservableList<KeyFrame> list = t.getKeyFrames();
-    if(d!=null){
-      if(list.isEmpty()){
-        list.add(new KeyFrame(d));
-      }else if(!list.get(0).getTime().equals(d)){
-        list.setAll(new KeyFrame(d));
-      }
-    }else if(d == null && list.isEmpty()){
-      list.add(new KeyFrame(Duration.INDEFINITE));
-    }
-    t.playFromStart();
+  private void runTimer(final Duration d,final TimerWheel.Task t){
+    timer.schedule(t, d);
   }
   /**
    * ポップアップを表示するタイマーを起動する<br/>
@@ -400,7 +1418,7 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
   /**
    * ポップアップを表示するタイマーを起動する<br/>
    * 渡されたDurationの間待機し、Popupを表示するタイマーを起動する
-   * @param d アクションまでの時間
+   * @param d アクションまでの時間。nullや{@link Duration#INDEFINITE}の場合は時間経過で実行されない
    */
   protected final void runOpenTimer(final Duration d){
     runTimer(d,open);
@@ -408,7 +1426,7 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
   /**
    * ポップアップを表示するタイマーを停止する
    */
-  protected final void stopOpenTimer(){open.stop();}
+  protected final void stopOpenTimer(){timer.cancel(open);}
   /**
    * 対象に見合ったDurationを計算し、{@link SinglePopupBehavior#runHideTimer(Duration)}
    * を呼び出す
@@ -420,7 +1438,7 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
    * 表示してからの時間経過でポップアップを非表示にするタイマーを起動する<br/>
    * 渡されたDurationの間待機し、Popupを非表示にするタイマーを起動する。<br/>
    * runOpenTimerがイベントを発行した後に使われる<br/>
-   * @param d アクションまでの時間
+   * @param d アクションまでの時間。nullや{@link Duration#INDEFINITE}の場合は時間経過で実行されない
    */
   protected final void runHideTimer(final Duration d){
     runTimer(d,hide);
@@ -428,7 +1446,7 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
   /**
    * 表示してからの時間経過でポップアップを非表示にするタイマーを停止する<br/>
    */
-  protected final void stopHideTimer(){hide.stop();}
+  protected final void stopHideTimer(){timer.cancel(hide);}
 
   /**
    * Nodeからマウスが放れてからの時間経過でポップアップを非表示にするタイマーを起動する<br/>
@@ -441,7 +1459,7 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
   /**
    * Nodeからマウスが放れてからの時間経過でポップアップを非表示にするタイマーを起動する<br/>
    * 渡されたDurationの間待機し、Popupを非表示にするタイマーを起動する
-   * @param d アクションまでの時間
+   * @param d アクションまでの時間。nullや{@link Duration#INDEFINITE}の場合は時間経過で実行されない
    */
   protected final void runLeftTimer(final Duration d){
     runTimer(d,left);
@@ -449,7 +1467,7 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
   /**
    * Nodeからマウスが放れてからの時間経過でポップアップを非表示にするタイマーを停止する
    */
-  protected final void stopLeftTimer(){left.stop();}
+  protected final void stopLeftTimer(){timer.cancel(left);}
 
 
 
@@ -457,60 +1475,374 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
    * 表示しているポップアップを非表示にし、全てのタイマーを止める
    */
   public void kill(){
+    if(!initialized){
+      return;
+    }
+    final PopupMetrics m = metrics;
+    if(m != null && (visible != null || activate != null || async != null) && m.isEnabled()){
+      m.killed(this);
+    }
+    cancelAsync();
     final P v = getVisiblePopup();
     if(v!=null){
-      v.hide();
+      hidePopup(v, getVisibleNode());
+    }
+    setVisible(null, null);
+    setActivate(null, null);
+    stopOpenTimer();
+    stopHideTimer();
+    stopLeftTimer();
+    releaseIdleLeases();
+  }
+
+
+  //-----------------------------------------------
+  //         Node
+  //-----------------------------------------------
+
+  /**
+   * ポップアップを表示する
+   * @param p 表示にするポップアップ
+   * @param hover pが表示になる原因のNode
+   * @param anchorX pのAnchor座標x
+   * @param anchorY pのAnchor座標y
+   */
+  protected abstract void show(P p,Node hover,double anchorX,double anchorY);
+
+  /**
+   * nodeからpを取り出せるように保存します。<br/>
+   * 既にnodeに他のpが割り当てられている場合は、上書きします<br/>
+   * また、p=nullの場合はnodeに関する情報を削除します。<br/>
+   * デフォルト実装では{@link SinglePopupBehavior#getPopupRegistry()}を用います。
+   * @param node
+   * @param p
+   */
+  protected void storePopup(final Node node,final P p){
+    storeEntry(node, p);
+  }
+
+  private void storeEntry(final Node node,final Object o){
+    if(o == null){
+      getPopupRegistry().remove(node);
+    }else{
+      getPopupRegistry().put(node, o);
+    }
+    if(lazy != null){
+      final P p = lazy.remove(node);
+      if(p != null){
+        releasePopup(node, p);
+      }
+    }
+  }
+
+  private Object loadEntry(final Node node){
+    final PopupRegistry r = registry;
+    return r == null? null: r.get(node);
+  }
+
+  /**
+   * Nodeとポップアップを対応づける表を設定する。<br/>
+   * 最初のinstallより前に設定しなくてはならない。
+   * @param registry null不可
+   * @throws IllegalStateException 既にinstallが実行されている場合
+   * @see PopupRegistry#weakIdentity()
+   * @see PopupRegistry#nodeProperties(Object)
+   */
+  public void setPopupRegistry(final PopupRegistry registry){
+    if(registry == null){
+      throw new NullPointerException("registry");
+    }
+    if(initialized && this.registry != registry){
+      throw new IllegalStateException("already installed");
+    }
+    this.registry = registry;
+  }
+
+  /**
+   * Nodeとポップアップを対応づける表を返す。<br/>
+   * 設定されていない場合は{@link PopupRegistry#weakIdentity()}を用いる。
+   * @return
+   */
+  public PopupRegistry getPopupRegistry(){
+    if(registry == null){
+      registry = PopupRegistry.weakIdentity();
+    }
+    return registry;
+  }
+
+  /**
+   * nodeからPopupを取り出します。<br/>
+   * デフォルト実装は型安全ではありません。
+   * @param node
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  protected P getPopup(final Node node){
+    final Object o = loadEntry(node);
+    if(o instanceof PopupWindow){
+      return (P)o;
+    }
+    if(o instanceof LazyPopup){
+      return materialize(node, (LazyPopup<P>)o);
+    }
+    if(o instanceof PooledPopup){
+      return lease(node, (PooledPopup<P>)o);
+    }
+    if(o instanceof RegionPopup){
+      return ((RegionPopup<P>)o).popup;
+    }
+    return null;
+  }
+
+  /**
+   * nodeにポップアップがインストールされているかどうか。<br/>
+   * 遅延生成のポップアップは生成しない。
+   * @param node
+   * @return
+   */
+  protected boolean isInstalled(final Node node){
+    return loadEntry(node) != null;
+  }
+
+  //-----------------------------------------------
+  //         Pooled popup
+  //-----------------------------------------------
+  private P lease(final Node node,final PooledPopup<P> l){
+    if(leases == null){
+      leases = new ArrayList<>(2);
+    }
+    final ArrayList<Lease<P>> ls = leases;
+    for(int i=0,size=ls.size();i<size;i++){
+      final Lease<P> e = ls.get(i);
+      if(e.node == node) {
+        return e.popup;
+      }
+    }
+    releaseIdleLeases();
+    final P p = checkout(l.pool, false);
+    if(p != null){
+      ls.add(new Lease<>(node, p, l.pool));
+      return p;
+    }
+    //プールを使い切っている場合は、同じプールから借りている表示中(なければ表示待機中など)の
+    //ポップアップをnodeに引き継ぐ。表示はnodeに移るときに切り替わる
+    int handover = -1;
+    for(int i=0,size=ls.size();i<size;i++){
+      final Lease<P> e = ls.get(i);
+      if(e.pool == l.pool){
+        if(e.popup == getVisiblePopup()){
+          handover = i;
+          break;
+        }
+        if(handover < 0){
+          handover = i;
+        }
+      }
+    }
+    if(handover < 0){
+      //このBehaviorが借りていなければ、他のBehaviorから取り戻す
+      final P r = checkout(l.pool, true);
+      if(r != null){
+        ls.add(new Lease<>(node, r, l.pool));
+      }else{
+        final PopupMetrics m = metrics;
+        if(m != null && m.isEnabled()){
+          m.poolExhausted(this, node);
+        }
+      }
+      return r;
+    }
+    final P h = ls.get(handover).popup;
+    ls.set(handover, new Lease<>(node, h, l.pool));
+    return h;
+  }
+
+  @SuppressWarnings("unchecked")
+  private P checkout(final PopupPool<? extends P> pool,final boolean reclaim){
+    return ((PopupPool<P>)pool).checkout(this, reclaim);
+  }
+
+  /**
+   * 使い切ったプールに、他のBehaviorがこのBehaviorから借りているポップアップを取り戻させる。<br/>
+   * levelが0の場合は表示中、表示待機中、準備中でないもの、
+   * 1の場合は表示待機中や準備中のもの、2の場合は表示中のものを返す。
+   * 1と2ではこのBehaviorの表示待機や表示を止める。
+   * @param pool
+   * @param level
+   * @return poolにポップアップを返した場合true
+   */
+  boolean yieldLease(final PopupPool<?> pool,final int level){
+    final ArrayList<Lease<P>> ls = leases;
+    if(ls == null || ls.isEmpty()) {
+      return false;
+    }
+    final int before = ls.size();
+    switch(level){
+      case 0:
+        break;
+      case 1:{
+        final AsyncRequest<?> r = async;
+        final P v = getVisiblePopup();
+        final P a = getActivatePopup();
+        if(a != null && a != v && holds(pool, a)){
+          stopOpenTimer();
+          setActivate(null, null);
+        }
+        if(r != null && r.popup != v && holds(pool, r.popup)){
+          cancelAsync();
+        }
+        break;
+      }
+      default:
+        if(holds(pool, getVisiblePopup())){
+          kill();
+        }
+        break;
+    }
+    releaseIdleLeases();
+    return ls.size() < before;
+  }
+
+  private boolean holds(final PopupPool<?> pool,final PopupWindow p){
+    if(p == null) {
+      return false;
+    }
+    final ArrayList<Lease<P>> ls = leases;
+    for(int i=0,size=ls.size();i<size;i++){
+      final Lease<P> e = ls.get(i);
+      if(e.pool == pool && e.popup == p) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** 表示中、表示待機中、準備中でないポップアップをプールに返す */
+  private void releaseIdleLeases(){
+    final ArrayList<Lease<P>> ls = leases;
+    if(ls == null || ls.isEmpty()) {
+      return;
+    }
+    final AsyncRequest<?> r = async;
+    for(int i=ls.size()-1;i>=0;i--){
+      final Lease<P> e = ls.get(i);
+      final P p = e.popup;
+      if(p != getVisiblePopup() && p != getActivatePopup() && (r == null || r.popup != p)){
+        ls.remove(i);
+        e.release(this);
+      }
+    }
+  }
+
+  private static final class PooledPopup<P extends PopupWindow>{
+    final PopupPool<? extends P> pool;
+    PooledPopup(final PopupPool<? extends P> pool){
+      this.pool = pool;
     }
-    setVisible(null, null);
-    setActivate(null, null);
-    stopOpenTimer();
-    stopHideTimer();
-    stopLeftTimer();
   }
 
+  private static final class Lease<P extends PopupWindow>{
+    final Node node;
+    final P popup;
+    private final PopupPool<? extends P> pool;
+    Lease(final Node node,final P popup,final PopupPool<? extends P> pool){
+      this.node = node;
+      this.popup = popup;
+      this.pool = pool;
+    }
+    void release(final SinglePopupBehavior<?> owner){
+      checkin(pool, owner, popup);
+    }
+    @SuppressWarnings("unchecked")
+    private static <Q extends PopupWindow> void checkin(final PopupPool<Q> pool,
+        final SinglePopupBehavior<?> owner,final PopupWindow p){
+      pool.checkin(owner, (Q)p);
+    }
+  }
 
   //-----------------------------------------------
-  //         Node
+  //         Lazy popup
   //-----------------------------------------------
+  private P materialize(final Node node,final LazyPopup<P> l){
+    if(lazy == null){
+      lazy = new LazyCache();
+    }
+    P p = lazy.get(node);
+    if(p == null){
+      p = l.factory.apply(node);
+      if(p != null){
+        lazy.put(node, p);
+      }
+    }
+    return p;
+  }
 
   /**
-   * ポップアップを表示する
-   * @param p 表示にするポップアップ
-   * @param hover pが表示になる原因のNode
-   * @param anchorX pのAnchor座標x
-   * @param anchorY pのAnchor座標y
+   * {@link SinglePopupBehavior#install(Node, Function)}で生成したポップアップが
+   * キャッシュから追い出されたとき、またはアンインストールされたときに呼び出される。<br/>
+   * デフォルト実装は何もしない。参照は破棄されるので、特別な解放処理が必要な場合にオーバーライドする。
+   * @param node ポップアップを生成したNode
+   * @param p 解放するポップアップ
    */
-  protected abstract void show(P p,Node hover,double anchorX,double anchorY);
+  protected void releasePopup(final Node node,final P p){}
 
   /**
-   * nodeからpを取り出せるように保存します。<br/>
-   * 既にnodeに他のpが割り当てられている場合は、上書きします<br/>
-   * また、p=nullの場合はnodeに関する情報を削除します。<br/>
-   * デフォルト実装では{@link Node#getProperties()}を用います。
-   * @param node
-   * @param p
+   * 遅延生成したポップアップを保持する最大数を設定する。<br/>
+   * 表示中、表示待機中のポップアップは最大数を超えても解放されない。
+   * @param size 1以上
    */
-  protected void storePopup(final Node node,final P p){
-    if(p == null){
-      node.getProperties().remove(PROPERTY_KEY);
-    }else{
-      node.getProperties().put(PROPERTY_KEY, p);
+  public void setLazyCacheSize(final int size){
+    if(size < 1){
+      throw new IllegalArgumentException("size < 1:"+size);
+    }
+    lazySize = size;
+    if(lazy != null){
+      lazy.trim();
     }
   }
-
   /**
-   * nodeからPopupを取り出します。<br/>
-   * デフォルト実装は型安全ではありません。
-   * @param node
+   * 遅延生成したポップアップを保持する最大数
    * @return
    */
-  @SuppressWarnings("unchecked")
-  protected P getPopup(final Node node){
-    final Object o = node.getProperties().get(PROPERTY_KEY);
-    if(o instanceof PopupWindow){
-      return (P)o;
+  public int getLazyCacheSize(){
+    return lazySize;
+  }
+
+  private static final class LazyPopup<P>{
+    final Function<? super Node, ? extends P> factory;
+    LazyPopup(final Function<? super Node, ? extends P> factory){
+      this.factory = factory;
+    }
+  }
+
+  /** アクセス順のLRUキャッシュ */
+  private final class LazyCache extends LinkedHashMap<Node, P>{
+    private static final long serialVersionUID = 1L;
+    LazyCache(){super(16, 0.75f, true);}
+
+    private boolean isPinned(final P p){
+      return p == getVisiblePopup() || p == getActivatePopup();
+    }
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<Node, P> e){
+      if(size() <= lazySize || isPinned(e.getValue())) {
+        return false;
+      }
+      releasePopup(e.getKey(), e.getValue());
+      return true;
+    }
+
+    void trim(){
+      final Iterator<Map.Entry<Node, P>> i = entrySet().iterator();
+      while(size() > lazySize && i.hasNext()){
+        final Map.Entry<Node, P> e = i.next();
+        if(!isPinned(e.getValue())){
+          i.remove();
+          releasePopup(e.getKey(), e.getValue());
+        }
+      }
     }
-    return null;
   }
 
   /** ActivatePopupに関連づけられたNode */
@@ -521,13 +1853,26 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
   protected P getActivatePopup(){return activate;}
   /** 現在表示中のPopup*/
   protected P getVisiblePopup(){return visible;}
-  /** 表示待機中のPopupを設定する*/
+  /** 表示待機中のPopupを設定する。<br/>
+   * {@link SinglePopupBehavior#prefetchProperty()}がtrueの場合、新たに待機中になったNodeの先読みを開始する*/
   protected void setActivate(final P p,final Node hover){
+    if(p != null && (p != activate || hover != this.hover)){
+      prefetch(p, hover);
+      final PopupMetrics m = metrics;
+      if(m != null && m.isEnabled()){
+        m.activated(this, hover);
+      }
+    }
     this.activate=p;this.hover = hover;
+    updateGroupState();
   }
   /** 表示中のPopupを設定する */
   protected void setVisible(final P p,final Node node){
     this.visible=p;this.vinode = node;
+    if(p == null){
+      visibleRegion = null;
+    }
+    updateGroupState();
   }
   /**表示中のPopupがあるかどうか*/
   public boolean isShowing(){return getVisiblePopup()!=null;}
@@ -535,6 +1880,58 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
 
 
 
+  //-----------------------------------------------
+  //         Metrics
+  //-----------------------------------------------
+  /**
+   * 動作を観測するリスナーを設定する。<br/>
+   * 参加しているグループのリスナーにも同じ動作が通知される。
+   * @param m null可。nullの場合は観測しない
+   * @see PopupStatistics
+   * @see BehaviorGroup#setMetrics(PopupMetrics)
+   */
+  public void setMetrics(final PopupMetrics m){
+    ownMetrics = m;
+    updateMetrics();
+  }
+
+  /**
+   * {@link SinglePopupBehavior#setMetrics(PopupMetrics)}で設定されたリスナーを返す
+   * @return
+   */
+  public PopupMetrics getMetrics(){
+    return ownMetrics;
+  }
+
+  /** 自身と参加しているグループのリスナーを一つにまとめる */
+  private void updateMetrics(){
+    PopupMetrics m = ownMetrics;
+    if(groups != null){
+      for(final BehaviorGroup g:groups){
+        if(g.metrics != null){
+          m = PopupMetrics.combine(m, g.metrics);
+        }
+      }
+    }
+    metrics = m;
+  }
+
+  /**
+   * これ以降に作成されるBehaviorに設定するリスナーを設定する。<br/>
+   * jdk.jfrが存在する場合、初期値は{@link JfrPopupMetrics#create()}のJFRのリスナーになる。
+   * このリスナーはJFRで記録していない間は{@link PopupMetrics#isEnabled()}がfalseになるので、負荷はほぼ無い。
+   * 外す場合はnullを設定する。
+   * @param m null可
+   * @see JfrPopupMetrics#enable()
+   */
+  public static void setDefaultMetrics(final PopupMetrics m){
+    defaultMetrics = m;
+  }
+
+  public static PopupMetrics getDefaultMetrics(){
+    return defaultMetrics;
+  }
+
   //-----------------------------------------------
   //         Group
   //-----------------------------------------------
@@ -565,11 +1962,38 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
     return false;
   }
 
+  /** 準備中の非同期の更新を設定する */
+  private void setAsync(final AsyncRequest<?> r){
+    async = r;
+    updateGroupState();
+  }
+
+  /**
+   * 表示中かどうか、動作中(表示中、表示待機中、または非同期の準備中)かどうかの変化をグループに通知する
+   */
+  private void updateGroupState(){
+    final boolean s = visible != null;
+    final boolean b = s || activate != null || async != null;
+    if(s == groupShowing && b == groupBusy) {
+      return;
+    }
+    groupShowing = s;
+    groupBusy = b;
+    if(groups == null) {
+      return;
+    }
+    for(final BehaviorGroup g:groups){
+      g.update(this, s, b);
+    }
+  }
+
   private void addGroup(final BehaviorGroup g){
     if(groups == null){
       groups = new ArrayList<>(1);
     }
     groups.add(g);
+    g.update(this, groupShowing, groupBusy);
+    updateMetrics();
   }
 
   private void removeGroup(final BehaviorGroup g){
@@ -577,9 +2001,11 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
       return;
     }
     groups.remove(g);
+    g.update(this, false, false);
     if(groups.isEmpty()){
       groups = null;
     }
+    updateMetrics();
   }
   /**
    * 参加しているグループを返す
@@ -600,7 +2026,27 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
    *
    */
   public static class BehaviorGroup{
-    private List<WeakReference<SinglePopupBehavior<?>>> behaviors;
+    private final WeakIdentityMap<SinglePopupBehavior<?>, Boolean> behaviors = new WeakIdentityMap<>();
+    /** ポップアップを表示中のBehavior */
+    private final ArrayList<SinglePopupBehavior<?>> showing = new ArrayList<>(2);
+    /** ポップアップを表示中、表示待機中、または非同期の準備中のBehavior */
+    private final ArrayList<SinglePopupBehavior<?>> busy = new ArrayList<>(2);
+    private PopupMetrics metrics;
+
+    /**
+     * グループに属する全てのBehaviorの動作と、グループによる停止を観測するリスナーを設定する
+     * @param m null可
+     */
+    public void setMetrics(final PopupMetrics m){
+      metrics = m;
+      for(final SinglePopupBehavior<?> b:behaviors.keys()){
+        b.updateMetrics();
+      }
+    }
+
+    public PopupMetrics getMetrics(){
+      return metrics;
+    }
 
     public BehaviorGroup(){}
     public BehaviorGroup(final SinglePopupBehavior<?>... behaviors){
@@ -610,78 +2056,87 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
      * ブルー婦に属するBehaviorの処理を停止させます
      */
     public void kill(){
-      if(behaviors==null) {return;}
-      for(final WeakReference<SinglePopupBehavior<?>> r:behaviors){
-        final SinglePopupBehavior<?> b = r.get();
-        if(b!=null) {
-          b.kill();
-        }
+      for(final SinglePopupBehavior<?> b:behaviors.keys()){
+        b.kill();
       }
     }
     private void killOthers(final SinglePopupBehavior<?> source){
-      if(behaviors==null) {return;}
-      for(final WeakReference<SinglePopupBehavior<?>> r:behaviors){
-        final SinglePopupBehavior<?> b = r.get();
-        if(b!=null && b!=source) {
+      final ArrayList<SinglePopupBehavior<?>> l = busy;
+      if(l.isEmpty() || l.size()==1 && l.get(0)==source) {return;}
+      //killによってリストが変更される
+      for(final SinglePopupBehavior<?> b:l.toArray(new SinglePopupBehavior<?>[l.size()])){
+        if(b!=source) {
+          //bのリスナーはこのグループのリスナーを含む
+          final PopupMetrics m = b.metrics;
+          if(m != null && m.isEnabled()){
+            m.killedByGroup(this, source, b);
+          }
           b.kill();
         }
       }
     }
     private boolean isShowing(final SinglePopupBehavior<?> source){
-      if(behaviors==null) {return false;}
-      for(final WeakReference<SinglePopupBehavior<?>> r:behaviors){
-        final SinglePopupBehavior<?> b = r.get();
-        if(b!=null && b!= source && b.isShowing()) {
+      final ArrayList<SinglePopupBehavior<?>> l = showing;
+      for(int i=0,size=l.size();i<size;i++){
+        if(l.get(i)!=source) {
           return true;
         }
       }
       return false;
     }
 
+    private void update(final SinglePopupBehavior<?> b,final boolean s,final boolean u){
+      set(showing, b, s);
+      set(busy, b, u);
+    }
+
+    private static void set(final ArrayList<SinglePopupBehavior<?>> l,
+        final SinglePopupBehavior<?> b,final boolean contains){
+      final int i = indexOf(l, b);
+      if(contains){
+        if(i < 0){
+          l.add(b);
+        }
+      }else if(i >= 0){
+        l.remove(i);
+      }
+    }
+
+    private static int indexOf(final ArrayList<SinglePopupBehavior<?>> l,final SinglePopupBehavior<?> b){
+      for(int i=0,size=l.size();i<size;i++){
+        if(l.get(i)==b) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
     /**
      * このグループがbehaviorを含むかどうか
      * @param behaivor
      * @return
      */
     public boolean contains(final SinglePopupBehavior<?> behaivor){
-      if(behaivor==null || behaviors==null) {
-        return false;
-      }
-      for(final WeakReference<SinglePopupBehavior<?>> r:behaviors){
-        final SinglePopupBehavior<?> b = r.get();
-        if(behaivor.equals(b)) {
-          return true;
-        }
-      }
-      return false;
+      return behaviors.containsKey(behaivor);
+    }
+
+    /** このグループに属するBehaviorの数 */
+    public int size(){
+      return behaviors.size();
     }
 
     /**このグループ内で表示中のPopupBehaivorが存在するかどうか*/
     public boolean isShowing(){
-      if(behaviors==null) {return false;}
-      for(final WeakReference<SinglePopupBehavior<?>> r:behaviors){
-        final SinglePopupBehavior<?> b = r.get();
-        if(b!=null && b.isShowing()) {
-          return true;
-        }
-      }
-      return false;
+      return !showing.isEmpty();
     }
     /**
      * グループにbehaviorを追加する
      * @param behavior
      */
     public void add(final SinglePopupBehavior<?> behavior){
-      if(behavior ==null || contains(behavior)) {
+      if(behavior ==null || behaviors.put(behavior, Boolean.TRUE)!=null) {
         return;
       }
-      if(behaviors == null){
-        behaviors = new ArrayList<>();
-      }else if(!behaviors.isEmpty()){
-        clean();
-      }
-      final WeakReference<SinglePopupBehavior<?>> w = new WeakReference<>(behavior);
-      behaviors.add(w);
       behavior.addGroup(this);
     }
     /**
@@ -689,26 +2144,9 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
      * @param behavior
      */
     public void remove(final SinglePopupBehavior<?> behavior){
-      if(behavior ==null || behaviors==null) {return;}
-      final Iterator<WeakReference<SinglePopupBehavior<?>>> i = behaviors.iterator();
-      while(i.hasNext()) {
-        final WeakReference<SinglePopupBehavior<?>> w = i.next();
-        final SinglePopupBehavior<?> b = w.get();
-        if(b == null ) {
-          i.remove();
-        }else if(b.equals(behavior)){
-          i.remove();
-          b.removeGroup(this);
-          break;
-        }
-      }
-      while(i.hasNext()) {
-        if(i.next().get()==null) {
-          i.remove();
-        }
-      }
-      if(behaviors.isEmpty()){
-        behaviors = null;
+      if(behavior ==null) {return;}
+      if(behaviors.remove(behavior)!=null){
+        behavior.removeGroup(this);
       }
     }
 
@@ -717,25 +2155,9 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
      * @param behaviors
      */
     public void removeAll(final Collection<SinglePopupBehavior<?>> behaviors){
-      if(this.behaviors ==null || behaviors==null) {return;}
-      for(final SinglePopupBehavior<?> r:behaviors){
-        if(r == null) {
-          continue;
-        }
-        for (final Iterator<WeakReference<SinglePopupBehavior<?>>> i = this.behaviors.iterator();
-            i.hasNext();) {
-          final WeakReference<SinglePopupBehavior<?>> w = i.next();
-          final SinglePopupBehavior<?> b = w.get();
-          if(b != null && b.equals(r)) {
-            i.remove();
-            b.removeGroup(this);
-            break;
-          }
-        }
-      }
-      clean();
-      if(this.behaviors.isEmpty()){
-        this.behaviors = null;
+      if(behaviors==null) {return;}
+      for(final SinglePopupBehavior<?> b:behaviors){
+        remove(b);
       }
     }
 
@@ -767,50 +2189,160 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
       if(behaviors == null) {
         return;
       }
-      if(this.behaviors == null){
-        this.behaviors = new ArrayList<>(behaviors.size());
-      }
       for(final SinglePopupBehavior<?> b:behaviors){add(b);}
     }
 
-    private void clean(){
-      for (final Iterator<WeakReference<SinglePopupBehavior<?>>> i = behaviors.iterator();
-          i.hasNext();) {
-        final WeakReference<SinglePopupBehavior<?>> w1 = i.next();
-        if(w1.get() == null) {
-          i.remove();
-        }
-      }
-    }
     public void clear(){
-      for (final Iterator<WeakReference<SinglePopupBehavior<?>>> i = this.behaviors.iterator();
-          i.hasNext();) {
-        final WeakReference<SinglePopupBehavior<?>> w = i.next();
-        final SinglePopupBehavior<?> b = w.get();
-        if(b != null) {
-          b.removeGroup(this);
-          break;
-        }
+      for(final SinglePopupBehavior<?> b:behaviors.keys()){
+        b.removeGroup(this);
       }
       behaviors.clear();
+      showing.clear();
+      busy.clear();
     }
 
   }
 
+  /**
+   * {@link SinglePopupBehavior#manageVisible(SinglePopupBehavior, GroupScope)}で
+   * ポップアップを一つに制限する範囲
+   * @author nodamushi
+   */
+  public static enum GroupScope{
+    /** 全てのウィンドウで一つ。{@link SinglePopupBehavior#getStaticGroup()}を利用する */
+    GLOBAL,
+    /** ウィンドウ毎に一つ */
+    WINDOW,
+    /** Scene毎に一つ */
+    SCENE
+  }
+
   private static final BehaviorGroup GROUP = new BehaviorGroup();
+  private static final WeakIdentityMap<Object, BehaviorGroup> SCOPED_GROUPS = new WeakIdentityMap<>();
+
+  /**
+   * SinglePopupBehaviorが管理するBehaviorGroupにBehaviorを追加する。<br/>
+   * scopeがWINDOW,SCENEの場合、Behaviorはマウスが乗ったNodeのウィンドウ(Scene)毎のグループに
+   * 自動的に参加し、他のウィンドウ(Scene)のBehaviorには影響しない。
+   * ウィンドウが閉じられるとそのウィンドウのグループは破棄される。
+   * @param behavior
+   * @param scope
+   */
+  public static void manageVisible(final SinglePopupBehavior<?> behavior,final GroupScope scope){
+    if(behavior == null) {
+      return;
+    }
+    if(scope == null || scope == GroupScope.GLOBAL){
+      behavior.leaveScopedGroup();
+      behavior.scope = null;
+      GROUP.add(behavior);
+    }else{
+      GROUP.remove(behavior);
+      if(behavior.scope != scope){
+        behavior.leaveScopedGroup();
+        behavior.scope = scope;
+      }
+    }
+  }
+
+  /**
+   * ウィンドウ毎のグループを返す
+   * @param w
+   * @return 存在しない場合はnull
+   */
+  public static BehaviorGroup getScopedGroup(final Window w){
+    return SCOPED_GROUPS.get(w);
+  }
+
+  /**
+   * Scene毎のグループを返す
+   * @param s
+   * @return 存在しない場合はnull
+   */
+  public static BehaviorGroup getScopedGroup(final Scene s){
+    return SCOPED_GROUPS.get(s);
+  }
+
+  private void joinScopedGroup(final Node hover){
+    final Scene s = hover.getScene();
+    final Object key = s == null ? null : scope == GroupScope.SCENE ? s : s.getWindow();
+    if(key == scopeKey) {
+      return;
+    }
+    leaveScopedGroup();
+    if(key == null) {
+      return;
+    }
+    BehaviorGroup g = SCOPED_GROUPS.get(key);
+    if(g == null){
+      g = new BehaviorGroup();
+      SCOPED_GROUPS.put(key, g);
+      final Window w = s.getWindow();
+      if(w != null){
+        w.addEventHandler(WindowEvent.WINDOW_HIDDEN, new ScopeRemover(key, w));
+      }
+    }
+    scopeKey = key;
+    g.add(this);
+  }
+
+  private void leaveScopedGroup(){
+    final Object key = scopeKey;
+    if(key == null) {
+      return;
+    }
+    scopeKey = null;
+    final BehaviorGroup g = SCOPED_GROUPS.get(key);
+    if(g != null){
+      g.remove(this);
+    }
+  }
+
+  /**
+   * ウィンドウが閉じられたときにウィンドウ(Scene)毎のグループを破棄する
+   */
+  private static final class ScopeRemover implements EventHandler<WindowEvent>{
+    private final Object key;
+    private final Window window;
+    ScopeRemover(final Object key,final Window window){
+      this.key = key;
+      this.window = window;
+    }
+    @Override
+    public void handle(final WindowEvent e){
+      window.removeEventHandler(WindowEvent.WINDOW_HIDDEN, this);
+      final BehaviorGroup g = SCOPED_GROUPS.remove(key);
+      if(g != null){
+        for(final SinglePopupBehavior<?> b:g.behaviors.keys()){
+          if(b.scopeKey == key){
+            b.scopeKey = null;
+          }
+        }
+        g.kill();
+        g.clear();
+      }
+    }
+  }
   /**
    * SinglePopupBehaviorが管理するBehaviorGroupにBehaviorを追加する
    * @param behavior
    */
   public static void manageVisible(final SinglePopupBehavior<?> behavior){
-    GROUP.add(behavior);
+    manageVisible(behavior, GroupScope.GLOBAL);
   }
   /**
-   * SinglePopupBehaviorが管理するBehaviorGroupにBehaviorを追加する
+   * SinglePopupBehaviorが管理するBehaviorGroupにBehaviorを追加する。<br/>
+   * ウィンドウ(Scene)毎のグループに参加しているBehaviorは、そこから抜けてから追加される。
    * @param behaviors
+   * @see SinglePopupBehavior#manageVisible(SinglePopupBehavior, GroupScope)
    */
   public static void manageVisible(final SinglePopupBehavior<?>... behaviors){
-    GROUP.addAll(behaviors);
+    if(behaviors == null) {
+      return;
+    }
+    for(final SinglePopupBehavior<?> b:behaviors){
+      manageVisible(b, GroupScope.GLOBAL);
+    }
   }
   /**
    * SinglePopupBehaviorが管理するBehaviorGroupからBehaviorを削除する
@@ -818,13 +2350,22 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
    */
   public static void unmanageVisible(final SinglePopupBehavior<?> behavior){
     GROUP.remove(behavior);
+    if(behavior != null){
+      behavior.leaveScopedGroup();
+      behavior.scope = null;
+    }
   }
   /**
    * SinglePopupBehaviorが管理するBehaviorGroupからBehaviorを削除する
    * @param behaviors
    */
   public static void unmanageVisible(final SinglePopupBehavior<?>... behaviors){
-    GROUP.removeAll(behaviors);
+    if(behaviors == null) {
+      return;
+    }
+    for(final SinglePopupBehavior<?> b:behaviors){
+      unmanageVisible(b);
+    }
   }
   /**
    * SinglePopupBehaviorが管理するBehaviorGroupを返します
@@ -838,30 +2379,48 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
   //         Utility for sub classes
   //-----------------------------------------------
 
-  private static Method SET_ACTIVATED;
-  private static boolean SET_ACTICATED_LOADED=false;
-  private static void loadSetActivated(){
-    Method m;
+  private static ActivationAdapter activationAdapter;
+
+  /**
+   * Tooltipの表示待機状態を設定する方法を変更する
+   * @param a nullの場合は既定の方法に戻す
+   */
+  public static void setActivationAdapter(final ActivationAdapter a){
+    activationAdapter = a;
+  }
+
+  /**
+   * Tooltipの表示待機状態を設定する方法を返す
+   * @return
+   * @see ActivationAdapter
+   */
+  public static ActivationAdapter getActivationAdapter(){
+    ActivationAdapter a = activationAdapter;
+    if(a == null){
+      a = loadActivationAdapter();
+      activationAdapter = a;
+    }
+    return a;
+  }
+
+  private static ActivationAdapter loadActivationAdapter(){
     try{
-      m = Tooltip.class.getDeclaredMethod("setActivated", boolean.class);
-      m.setAccessible(true);
-    }catch(final Exception e){m=null;}
-    SET_ACTIVATED = m;
-    SET_ACTICATED_LOADED =true;
+      for(final ActivationAdapter a:ServiceLoader.load(ActivationAdapter.class)){
+        if(a.isAvailable()){
+          return a;
+        }
+      }
+    }catch(final ServiceConfigurationError e){}
+    final ActivationAdapter m = ActivationAdapter.methodHandle();
+    return m.isAvailable()? m: ActivationAdapter.pseudoClass();
   }
-  /** Reflectionを用いてTooltip.setActivatedを呼び出す*/
+
+  /** {@link SinglePopupBehavior#getActivationAdapter()}を用いてTooltipの表示待機状態を設定する*/
   protected static void setActivated(final Tooltip t,final Boolean b){
-    if(SET_ACTIVATED==null){
-      if(SET_ACTICATED_LOADED){
-        return;
-      }else{
-        loadSetActivated();
-        if(SET_ACTIVATED==null){return;}
-      }
+    if(t == null) {
+      return;
     }
-    try{
-      SET_ACTIVATED.invoke(t, b);
-    }catch(final Exception e){}
+    getActivationAdapter().setActivated(t, b);
   }
   /**親ウィンドウを取得する
    * @param n Node.enable {@code null}*/
@@ -878,7 +2437,9 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
     return w == null? false:w.isFocused();
   }
   /** Nodeがウィンドウ内で可視かどうか。<br/>
-   * javafx.scene.control.Tooltipからほぼ丸々コピペ*/
+   * javafx.scene.control.Tooltipからほぼ丸々コピペ<br/>
+   * 呼び出す度に親をたどる。{@link SinglePopupBehavior#isDisplayable(PopupWindow, Node)}は
+   * リスナーで結果を保持する実装を用いる*/
   protected static boolean isWindowHierarchyVisible(final Node node){
     if(node == null || !node.isVisible()) {
       return false;
@@ -898,14 +2459,45 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
   //         Field
   //-----------------------------------------------
   private boolean initialized = false;
-  private Timeline open,hide,left;
+  private TimerWheel timer;
+  private TimerWheel.Task open,hide,left,limit;
   private P activate,visible;
   private Node hover,vinode;
   private List<BehaviorGroup> groups;
+  private boolean groupShowing,groupBusy;
+  /** setMetricsで設定されたものと、それにグループのリスナーを加えたもの */
+  private PopupMetrics ownMetrics = defaultMetrics,metrics = ownMetrics;
+  private static PopupMetrics defaultMetrics = JfrPopupMetrics.create();
+  private GroupScope scope;
+  private Object scopeKey;
   private double x,y;
+  private double dwellX,dwellY;
   private EventHandler<MouseEvent> move,exit,press;
+  private boolean delegated;
+  private EventHandler<MouseEvent> smove,sexit,spress;
+  private WeakHashMap<Scene, Boolean> scenes;
+  private WeakIdentityMap<Node, Boolean> waitingRoots;
+  private SceneWaiter sceneWaiter;
+  private Node dhover;
+  private InvalidationListener cellItem;
+  private EventHandler<MouseEvent> rmove,rexit;
+  private boolean regions;
+  private RegionMap.Region<?> hoverRegion,visibleRegion;
+  private PopupRegistry registry;
+  private LazyCache lazy;
+  private LazyPopup<P> lastLazy;
+  private PooledPopup<P> lastPooled;
+  private ArrayList<Lease<P>> leases;
+  private int lazySize = 16;
   private BiPredicate<? super P, ? super Node> visibityc;
   private BiConsumer<? super P, ? super Node> update;
+  private AsyncPopupUpdater<? super P, ?> asyncUpdater;
+  private AsyncRequest<?> async;
+  private Executor asyncExecutor;
+  private Duration asyncTimeout;
+  private BiConsumer<? super P, ? super Node> placeholder;
+  private PopupContentCache contentCache;
+  private Function<? super Node, ?> contentKey;
   protected static final String PROPERTY_KEY="nodamushi.jfx.popup.PopupBehavior.PROPERTY_KEY";
 
 
@@ -952,4 +2544,76 @@ public abstract class SinglePopupBehavior<P extends PopupWindow>{
 
   private BooleanProperty hideOnExitProperty;
 
+  /**
+   * 表示待機中のNodeの上でマウスが動いたとき、ポップアップを表示するタイマーを
+   * 再起動せず、マウスの座標の更新のみ行うかどうか<br/>
+   * デフォルトはfalse
+   * @return
+   * @see SinglePopupBehavior#dwellThresholdProperty()
+   */
+  public final BooleanProperty dwellProperty(){
+    if (dwellProperty == null) {
+      dwellProperty = new SimpleBooleanProperty(this, "dwell", false);
+    }
+    return dwellProperty;
+  }
+
+  public final boolean isDwell(){
+    return dwellProperty == null ? false : dwellProperty.get();
+  }
+
+  public final void setDwell(final boolean value){
+    dwellProperty().set(value);
+  }
+
+  private BooleanProperty dwellProperty;
+
+  /**
+   * Nodeが表示待機中になった時点で、{@link SinglePopupBehavior#setAsyncPopupUpdater(AsyncPopupUpdater)}
+   * の準備を開始するかどうか<br/>
+   * ポップアップを表示するタイマーの待ち時間の間に準備が進むので、表示時には結果を反映するだけになる。
+   * 表示待機中のNodeが変わった場合、先読みは破棄される。<br/>
+   * デフォルトはfalse
+   * @return
+   */
+  public final BooleanProperty prefetchProperty(){
+    if (prefetchProperty == null) {
+      prefetchProperty = new SimpleBooleanProperty(this, "prefetch", false);
+    }
+    return prefetchProperty;
+  }
+
+  public final boolean isPrefetch(){
+    return prefetchProperty == null ? false : prefetchProperty.get();
+  }
+
+  public final void setPrefetch(final boolean value){
+    prefetchProperty().set(value);
+  }
+
+  private BooleanProperty prefetchProperty;
+
+  /**
+   * {@link SinglePopupBehavior#dwellProperty()}がtrueのとき、
+   * タイマーを起動した位置からこの距離以上マウスが動いたらタイマーを再起動する。<br/>
+   * 0以下の場合は再起動しない。デフォルトは0
+   * @return
+   */
+  public final DoubleProperty dwellThresholdProperty(){
+    if (dwellThresholdProperty == null) {
+      dwellThresholdProperty = new SimpleDoubleProperty(this, "dwellThreshold", 0);
+    }
+    return dwellThresholdProperty;
+  }
+
+  public final double getDwellThreshold(){
+    return dwellThresholdProperty == null ? 0 : dwellThresholdProperty.get();
+  }
+
+  public final void setDwellThreshold(final double value){
+    dwellThresholdProperty().set(value);
+  }
+
+  private DoubleProperty dwellThresholdProperty;
+
 }
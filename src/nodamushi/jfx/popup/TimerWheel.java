@@ -0,0 +1,184 @@
+package nodamushi.jfx.popup;
+
+import javafx.animation.AnimationTimer;
+import javafx.util.Duration;
+
+/**
+ * 全てのSinglePopupBehaviorで共有するタイマー。<br/>
+ * 一つの{@link AnimationTimer}で進めるハッシュドタイミングホイールで、
+ * タスクの登録と取り消しはO(1)で、メモリの確保をしない。<br/>
+ * 登録されたタスクがない間はAnimationTimerを停止する。
+ * 待機時間が無限のタスクはホイールに入れないので、パルスを要求しない。<br/>
+ * JavaFX Application Threadからのみ利用すること。
+ * @author nodamushi
+ *
+ */
+final class TimerWheel{
+  /** 1tickの長さ(ナノ秒) */
+  static final long TICK_NANOS = 5_000_000L;
+  private static final int SLOTS = 512;
+  private static final int MASK = SLOTS-1;
+  private static final int NONE = -1, FIRING = -2, HELD = -3;
+
+  private static TimerWheel instance;
+
+  /**
+   * 共有のインスタンスを返す
+   * @return
+   */
+  static TimerWheel getDefault(){
+    if(instance == null){
+      instance = new TimerWheel();
+    }
+    return instance;
+  }
+
+  private final Task[] slots = new Task[SLOTS];
+  private final long origin = System.nanoTime();
+  private Task firing;
+  private long tick;
+  private int count;
+  private boolean running;
+  private final AnimationTimer pulse = new AnimationTimer(){
+    @Override
+    public void handle(final long now){
+      advance();
+    }
+  };
+
+  private TimerWheel(){}
+
+  private long currentTick(){
+    return (System.nanoTime() - origin) / TICK_NANOS;
+  }
+
+  /**
+   * タスクを登録する。既に登録されている場合は登録し直す。
+   * @param t
+   * @param d 待機時間。nullや{@link Duration#INDEFINITE}の場合は時間経過で実行されない
+   */
+  void schedule(final Task t,final Duration d){
+    cancel(t);
+    if(d == null || d.isIndefinite() || d.isUnknown()){
+      t.slot = HELD;
+      return;
+    }
+    //tickは最後のパルスの時刻なので、期限は現在の時刻から計算する
+    final long now = currentTick();
+    if(count == 0){
+      tick = now;
+    }
+    final long n = (long)Math.ceil(d.toMillis()*1_000_000d / TICK_NANOS);
+    final long deadline = now + (n < 1? 1: n);
+    t.deadline = deadline;
+    final int i = (int)(deadline & MASK);
+    link(t, i);
+    count++;
+    if(!running){
+      running = true;
+      pulse.start();
+    }
+  }
+
+  /**
+   * タスクの登録を取り消す
+   * @param t
+   */
+  void cancel(final Task t){
+    final int s = t.slot;
+    if(s == NONE) {
+      return;
+    }
+    if(s == HELD){
+      t.slot = NONE;
+      return;
+    }
+    unlink(t);
+    if(s != FIRING){
+      count--;
+    }
+  }
+
+  private void link(final Task t,final int i){
+    final Task h = i == FIRING? firing: slots[i];
+    t.slot = i;
+    t.prev = null;
+    t.next = h;
+    if(h != null){
+      h.prev = t;
+    }
+    if(i == FIRING){
+      firing = t;
+    }else{
+      slots[i] = t;
+    }
+  }
+
+  private void unlink(final Task t){
+    final Task p = t.prev, n = t.next;
+    if(p != null){
+      p.next = n;
+    }else if(t.slot == FIRING){
+      firing = n;
+    }else{
+      slots[t.slot] = n;
+    }
+    if(n != null){
+      n.prev = p;
+    }
+    t.prev = t.next = null;
+    t.slot = NONE;
+  }
+
+  private void expire(final int i,final long now){
+    Task t = slots[i];
+    while(t != null){
+      final Task n = t.next;
+      if(t.deadline <= now){
+        unlink(t);
+        count--;
+        link(t, FIRING);
+      }
+      t = n;
+    }
+  }
+
+  private void advance(){
+    final long now = currentTick();
+    if(now - tick >= SLOTS){
+      for(int i=0;i<SLOTS;i++){
+        expire(i, now);
+      }
+    }else{
+      for(long k = tick+1;k<=now;k++){
+        expire((int)(k & MASK), now);
+      }
+    }
+    tick = now;
+    for(Task t = firing;t != null;t = firing){
+      unlink(t);
+      t.run();
+    }
+    if(count == 0 && running){
+      running = false;
+      pulse.stop();
+    }
+  }
+
+  /**
+   * TimerWheelに登録するタスク
+   */
+  abstract static class Task{
+    private Task prev,next;
+    private int slot = NONE;
+    private long deadline;
+
+    /** 登録されていて、まだ実行されていないかどうか。待機時間が無限の場合もtrue */
+    final boolean isScheduled(){
+      return slot != NONE;
+    }
+
+    /** 時間が経過したときに実行される */
+    protected abstract void run();
+  }
+}
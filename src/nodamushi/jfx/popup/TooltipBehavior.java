@@ -1,6 +1,9 @@
 package nodamushi.jfx.popup;
 
+import java.util.Collection;
+
 import javafx.scene.Node;
+import javafx.scene.control.Cell;
 import javafx.scene.control.Tooltip;
 import javafx.util.Duration;
 
@@ -41,7 +44,7 @@ public class TooltipBehavior extends TooltipBehaviorBase<Tooltip>{
         setActivated(old, Boolean.FALSE);
       }
       if(p!=null){
-        setActivated(old, Boolean.TRUE);
+        setActivated(p, Boolean.TRUE);
       }
     }
     super.setActivate(p, hover);
@@ -101,4 +104,26 @@ public class TooltipBehavior extends TooltipBehaviorBase<Tooltip>{
     install(node,t);
   }
 
+  /**
+   * {@link TooltipBehavior#getDefaultTooltip()}で得られる
+   * Tooltipを用いて全てのNodeにインストールする。<br/>
+   * installを繰り返すより速くなるのはScene単位でイベントを受け取るモードの場合のみ。
+   * @param nodes
+   * @see SinglePopupBehavior#installAll(Collection, java.util.function.Function)
+   */
+  public void installAll(final Collection<? extends Node> nodes){
+    final Tooltip t = getDefaultTooltip();
+    installAll(nodes, n->t);
+  }
+
+  /**
+   * {@link TooltipBehavior#getDefaultTooltip()}で得られる
+   * Tooltipを用いてCellにインストールする
+   * @param cell
+   * @see SinglePopupBehavior#installCell(Cell, javafx.stage.PopupWindow)
+   */
+  public void installCell(final Cell<?> cell){
+    installCell(cell, getDefaultTooltip());
+  }
+
 }
@@ -6,7 +6,10 @@ import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.geometry.NodeOrientation;
+import javafx.geometry.Rectangle2D;
 import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
 import javafx.stage.PopupWindow;
 import javafx.stage.Window;
 import javafx.util.Duration;
@@ -22,27 +25,79 @@ extends SinglePopupBehavior<P>{
 
 
   @Override
-  protected void show(final P p ,final Node hover ,double x ,double y){
+  protected void show(final P p ,final Node hover ,final double x ,final double y){
+    showPopup(p, hover, x, y, getXOffset(), getYOffset());
+  }
+
+  /**
+   * ポップアップを表示する。<br/>
+   * 表示前にポップアップの大きさを計算し、画面からはみ出さない位置(下にはみ出す場合はカーソルの上)を
+   * 先に決めるので、表示は一度だけ行われる。
+   * @param p ポップアップ
+   * @param hover ポップアップの原因となったNode
+   * @param x マウスのスクリーン座標
+   * @param y マウスのスクリーン座標
+   * @param ox x方向のオフセット
+   * @param oy y方向のオフセット
+   */
+  protected void showPopup(final P p ,final Node hover ,double x ,double y,
+      final double ox,final double oy){
     //あんまり意味は分かってないけど
     //とりあえずjavafx.scene.control.Tooltipからほぼ引用
 
     final NodeOrientation nodeOrientation = hover.getEffectiveNodeOrientation();
     p.getScene().setNodeOrientation(nodeOrientation);
+    measure(p);
+    final double w = measuredWidth,h = measuredHeight;
     if (nodeOrientation == NodeOrientation.RIGHT_TO_LEFT) {
-        x -= p.getWidth();
+      x -= w;
+    }
+    double px = x+ox,py = y+oy;
+    final Rectangle2D b = getScreenBounds(x, y);
+    if(b != null){
+      px = ScreenGeometry.clampX(b, px, w);
+      py = ScreenGeometry.placeY(b, py, h, y);
     }
     final Window owner = getWindow(hover);
-    final double ox =getXOffset();
-    final double oy = getYOffset();
-    p.show(owner, floor(x+ox), floor(y+oy));
-
-    if ((y+TOOLTIP_YOFFSET) > p.getAnchorY()) {
-        p.hide();
-        y -= p.getHeight();
-        p.show(owner, floor(x+ox), floor(y));
+    p.show(owner, floor(px), floor(py));
+  }
+
+  /**
+   * 表示前にポップアップの大きさを計算する。<br/>
+   * CSSとレイアウトを適用した、ルートの推奨サイズを用いる。
+   * @param p
+   */
+  private void measure(final P p){
+    double w = 0,h = 0;
+    final Scene scene = p.getScene();
+    final Parent root = scene == null ? null : scene.getRoot();
+    if(root != null){
+      root.applyCss();
+      w = root.prefWidth(-1);
+      h = root.prefHeight(w);
+    }
+    if(!(w > 0 && h > 0)){
+      //計算できなかった場合は前回表示したときの大きさ
+      w = p.getWidth();
+      h = p.getHeight();
     }
+    measuredWidth = w;
+    measuredHeight = h;
   }
 
+  /**
+   * 座標を含むスクリーンの表示可能領域を返す。<br/>
+   * スクリーンの領域はキャッシュされ、スクリーンの構成が変わったときに更新される。
+   * @param x
+   * @param y
+   * @return 見つからない場合は最も近いスクリーンの表示可能領域
+   */
+  protected Rectangle2D getScreenBounds(final double x,final double y){
+    return ScreenGeometry.getVisualBounds(x, y);
+  }
+
+  private double measuredWidth,measuredHeight;
+
 
 
   //-------------------------------------------
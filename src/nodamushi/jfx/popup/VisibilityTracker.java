@@ -0,0 +1,116 @@
+package nodamushi.jfx.popup;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+
+/**
+ * Nodeとその全ての親が可視かどうかを、visibleとparentのリスナーで追跡する。<br/>
+ * 一度問い合わせたNodeとその祖先にはリスナーが登録され、以降の問い合わせは
+ * 変更がない限り親をたどらずに結果を返す。
+ * 祖先の情報は兄弟のNode間で共有される。<br/>
+ * JavaFX Application Threadからのみ利用すること。
+ * @author nodamushi
+ *
+ */
+final class VisibilityTracker{
+
+  private static final WeakIdentityMap<Node, Entry> ENTRIES = new WeakIdentityMap<>();
+
+  private VisibilityTracker(){}
+
+  /**
+   * nodeとその全ての親が可視かどうか
+   * @param node
+   * @return nodeがnullの場合はfalse
+   * @see SinglePopupBehavior#isWindowHierarchyVisible(Node)
+   */
+  static boolean isTreeVisible(final Node node){
+    if(node == null) {
+      return false;
+    }
+    return entry(node).isVisible();
+  }
+
+  private static Entry entry(final Node n){
+    Entry e = ENTRIES.get(n);
+    if(e == null){
+      e = new Entry(n);
+      ENTRIES.put(n, e);
+    }
+    return e;
+  }
+
+  /** Node一つ分の状態。Nodeは弱参照で持つ */
+  private static final class Entry implements InvalidationListener{
+    private final WeakReference<Node> node;
+    private Entry parent;
+    private ArrayList<Entry> children;
+    private boolean valid,visible;
+
+    Entry(final Node n){
+      node = new WeakReference<>(n);
+      n.visibleProperty().addListener(this);
+      n.parentProperty().addListener(this::parentChanged);
+    }
+
+    boolean isVisible(){
+      if(!valid){
+        visible = compute();
+        valid = true;
+      }
+      return visible;
+    }
+
+    private boolean compute(){
+      final Node n = node.get();
+      if(n == null || !n.isVisible()) {
+        return false;
+      }
+      final Parent p = n.getParent();
+      if(p == null) {
+        return true;
+      }
+      if(parent == null){
+        parent = entry(p);
+        if(parent.children == null){
+          parent.children = new ArrayList<>(4);
+        }
+        parent.children.add(this);
+      }
+      return parent.isVisible();
+    }
+
+    /** visibleの変更 */
+    @Override
+    public void invalidated(final Observable o){
+      invalidate();
+    }
+
+    private void parentChanged(final Observable o){
+      if(parent != null){
+        parent.children.remove(this);
+        parent = null;
+      }
+      invalidate();
+    }
+
+    /** 子が有効なら親も有効なので、既に無効ならば子孫も無効である */
+    private void invalidate(){
+      if(!valid) {
+        return;
+      }
+      valid = false;
+      final ArrayList<Entry> c = children;
+      if(c != null){
+        for(int i=0,size=c.size();i<size;i++){
+          c.get(i).invalidate();
+        }
+      }
+    }
+  }
+}
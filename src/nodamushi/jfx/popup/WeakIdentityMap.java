@@ -0,0 +1,225 @@
+package nodamushi.jfx.popup;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * キーを弱参照で保持し、同一性(==)で比較するハッシュ表。<br/>
+ * GCで回収されたキーのエントリは{@link ReferenceQueue}を通して、
+ * 変更操作のついでに削除される。<br/>
+ * スレッドセーフではない。
+ * @author nodamushi
+ *
+ * @param <K>
+ * @param <V>
+ */
+final class WeakIdentityMap<K,V>{
+
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private final ReferenceQueue<K> queue = new ReferenceQueue<>();
+  private Entry<K,V>[] table;
+  private int size;
+  private int threshold;
+
+  WeakIdentityMap(){
+    this(DEFAULT_CAPACITY);
+  }
+
+  WeakIdentityMap(final int capacity){
+    int c = DEFAULT_CAPACITY;
+    while(c < capacity){
+      c <<= 1;
+    }
+    table = newTable(c);
+    threshold = c*3/4;
+  }
+
+  @SuppressWarnings({"unchecked","rawtypes"})
+  private static <K,V> Entry<K,V>[] newTable(final int c){
+    return new Entry[c];
+  }
+
+  private static int hash(final Object k){
+    final int h = System.identityHashCode(k);
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * keyに対応する値を返す
+   * @param key
+   * @return 存在しない場合はnull
+   */
+  V get(final Object key){
+    if(key == null) {
+      return null;
+    }
+    final int h = hash(key);
+    final Entry<K,V>[] t = table;
+    for(Entry<K,V> e = t[h & (t.length-1)];e!=null;e = e.next){
+      if(e.hash == h && e.get() == key) {
+        return e.value;
+      }
+    }
+    return null;
+  }
+
+  boolean containsKey(final Object key){
+    return get(key) != null;
+  }
+
+  /**
+   * keyに値を設定する
+   * @param key null不可
+   * @param value null不可
+   * @return 以前の値
+   */
+  V put(final K key,final V value){
+    expunge();
+    final int h = hash(key);
+    Entry<K,V>[] t = table;
+    int i = h & (t.length-1);
+    for(Entry<K,V> e = t[i];e!=null;e = e.next){
+      if(e.hash == h && e.get() == key) {
+        final V old = e.value;
+        e.value = value;
+        return old;
+      }
+    }
+    if(size >= threshold){
+      resize();
+      t = table;
+      i = h & (t.length-1);
+    }
+    t[i] = new Entry<>(key, value, h, t[i], queue);
+    size++;
+    return null;
+  }
+
+  /**
+   * keyを削除する
+   * @param key
+   * @return 削除した値
+   */
+  V remove(final Object key){
+    expunge();
+    if(key == null) {
+      return null;
+    }
+    final int h = hash(key);
+    final Entry<K,V>[] t = table;
+    final int i = h & (t.length-1);
+    Entry<K,V> prev = null;
+    for(Entry<K,V> e = t[i];e!=null;prev = e,e = e.next){
+      if(e.hash == h && e.get() == key) {
+        final V v = e.value;
+        unlink(t, i, prev, e);
+        return v;
+      }
+    }
+    return null;
+  }
+
+  /** GCされていないエントリの数 */
+  int size(){
+    expunge();
+    return size;
+  }
+
+  boolean isEmpty(){
+    return size() == 0;
+  }
+
+  /**
+   * GCされていないキーのスナップショットを返す
+   * @return 変更可能なリスト
+   */
+  List<K> keys(){
+    expunge();
+    final ArrayList<K> l = new ArrayList<>(size);
+    final Entry<K,V>[] t = table;
+    for(int i=0;i<t.length;i++){
+      for(Entry<K,V> e = t[i];e!=null;e = e.next){
+        final K k = e.get();
+        if(k != null){
+          l.add(k);
+        }
+      }
+    }
+    return l;
+  }
+
+  void clear(){
+    while(queue.poll() != null){}
+    final Entry<K,V>[] t = table;
+    for(int i=0;i<t.length;i++){
+      t[i] = null;
+    }
+    size = 0;
+  }
+
+  private void unlink(final Entry<K,V>[] t,final int i,final Entry<K,V> prev,final Entry<K,V> e){
+    if(prev == null){
+      t[i] = e.next;
+    }else{
+      prev.next = e.next;
+    }
+    e.next = null;
+    e.value = null;
+    size--;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void expunge(){
+    for(Object o;(o = queue.poll())!=null;){
+      final Entry<K,V> x = (Entry<K,V>)o;
+      final Entry<K,V>[] t = table;
+      final int i = x.hash & (t.length-1);
+      Entry<K,V> prev = null;
+      for(Entry<K,V> e = t[i];e!=null;prev = e,e = e.next){
+        if(e == x) {
+          unlink(t, i, prev, e);
+          break;
+        }
+      }
+    }
+  }
+
+  private void resize(){
+    final Entry<K,V>[] old = table;
+    final Entry<K,V>[] t = newTable(old.length << 1);
+    for(int i=0;i<old.length;i++){
+      Entry<K,V> e = old[i];
+      while(e != null){
+        final Entry<K,V> next = e.next;
+        if(e.get() == null){
+          e.next = null;
+          e.value = null;
+          size--;
+        }else{
+          final int j = e.hash & (t.length-1);
+          e.next = t[j];
+          t[j] = e;
+        }
+        e = next;
+      }
+    }
+    table = t;
+    threshold = t.length*3/4;
+  }
+
+  private static final class Entry<K,V> extends WeakReference<K>{
+    final int hash;
+    V value;
+    Entry<K,V> next;
+    Entry(final K key,final V value,final int hash,final Entry<K,V> next,
+        final ReferenceQueue<K> queue){
+      super(key, queue);
+      this.value = value;
+      this.hash = hash;
+      this.next = next;
+    }
+  }
+}
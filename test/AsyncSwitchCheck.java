@@ -0,0 +1,249 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.event.Event;
+import javafx.event.EventType;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.stage.Popup;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+import nodamushi.jfx.popup.AsyncPopupUpdater;
+import nodamushi.jfx.popup.PopupMetrics;
+import nodamushi.jfx.popup.SinglePopupBehavior;
+import nodamushi.jfx.popup.TooltipBehaviorBase;
+
+/**
+ * ポップアップの表示中に別のNodeへ移り、時間のかかる非同期の準備をしている間に
+ * Left TimerやHide Timerが発火しても、準備が取り消されずに新しいNodeのポップアップが表示されることを確認する。<br/>
+ * 準備に400ms、Left Timerは200ms、Hide Timerは300msとする。<br/>
+ * また、準備中にNodeから離れたときにupdaterが取り消しを知って処理を止めること、
+ * 準備に失敗したときにupdaterとPopupMetricsに通知されることを確認する。<br/>
+ * 文字を含まないPopupを用いる。--head で実際のウィンドウで実行する。<br/>
+ * 全て成功した場合は終了コード0、失敗した場合は1で終了する。
+ */
+public class AsyncSwitchCheck extends Application{
+
+  private static final long LOAD = 400;
+
+  public static void main(final String[] args){
+    boolean head = false;
+    for(final String a:args){
+      if("--head".equals(a)){
+        head = true;
+      }
+    }
+    if(!head){
+      System.setProperty("glass.platform", "Monocle");
+      System.setProperty("monocle.platform", "Headless");
+      System.setProperty("prism.order", "sw");
+    }
+    launch(args);
+  }
+
+  private static final class PopupBehavior extends TooltipBehaviorBase<Popup>{
+    Node visibleNode(){
+      return getVisibleNode();
+    }
+    @Override
+    protected void runOpenTimer(final Popup p ,final Node hover){
+      runOpenTimer(getOpenDuration());
+    }
+    @Override
+    protected void runHideTimer(final Popup p ,final Node hover){
+      runHideTimer(getHideDuration());
+    }
+    @Override
+    protected void runLeftTimer(final Popup p ,final Node hover){
+      runLeftTimer(getLeftDuration());
+    }
+  }
+
+  /**
+   * LOADミリ秒かかって、Nodeを返す。取り消されると途中で止まる。<br/>
+   * failの場合は例外で終わり、failedでポップアップを表示させる
+   */
+  private static final class SlowUpdater implements AsyncPopupUpdater<Popup, Node>{
+    final boolean fail;
+    /** onCancelが呼ばれた */
+    volatile boolean notified;
+    /** 処理がisCancelledを見て途中で止まった */
+    volatile boolean stopped;
+    /** 処理が最後まで実行された */
+    volatile int completed;
+    int failedCalls;
+    SlowUpdater(final boolean fail){
+      this.fail = fail;
+    }
+    @Override
+    public CompletableFuture<Node> load(final Popup p ,final Node node ,final Executor executor,
+        final Cancellation c){
+      c.onCancel(()->notified = true);
+      return CompletableFuture.supplyAsync(()->{
+        for(long t=0;t<LOAD;t+=10){
+          if(c.isCancelled()){
+            stopped = true;
+            return null;
+          }
+          try{
+            Thread.sleep(10);
+          }catch(final InterruptedException e){
+            Thread.currentThread().interrupt();
+          }
+        }
+        completed++;
+        if(fail){
+          throw new IllegalStateException("load failed");
+        }
+        return node;
+      }, executor);
+    }
+    @Override
+    public void apply(final Popup p ,final Node node ,final Node value){}
+    @Override
+    public boolean failed(final Popup p ,final Node node ,final Throwable ex){
+      failedCalls++;
+      return ex instanceof IllegalStateException;
+    }
+  }
+
+  private Rectangle a,b;
+  private int failures;
+
+  @Override
+  public void start(final Stage stage) throws Exception{
+    a = new Rectangle(40, 40, Color.GRAY);
+    b = new Rectangle(40, 40, Color.DARKGRAY);
+    b.setLayoutX(50);
+    stage.setScene(new Scene(new Group(a, b), 100, 100));
+    stage.show();
+    leftScenario(()->hideScenario(()->cancelScenario(()->failScenario(()->{
+      System.out.println(failures == 0? "PASS": "FAIL "+failures);
+      Platform.exit();
+      System.exit(failures == 0? 0: 1);
+    }))));
+  }
+
+  /** Aを表示した後、Aから出てBに乗る。Left Timer(200ms)は準備(400ms)より先に発火する */
+  private void leftScenario(final Runnable next){
+    final PopupBehavior bh = newBehavior(Duration.millis(200), Duration.INDEFINITE);
+    fire(a, MouseEvent.MOUSE_MOVED);
+    later(LOAD+300, ()->{
+      check("left: A shown", bh.visibleNode() == a);
+      fire(a, MouseEvent.MOUSE_EXITED);
+      fire(b, MouseEvent.MOUSE_MOVED);
+      later(LOAD+400, ()->{
+        check("left: B shown after the left timer elapsed", bh.visibleNode() == b);
+        bh.kill();
+        next.run();
+      });
+    });
+  }
+
+  /**
+   * Aを表示した直後に、MOUSE_EXITEDなしでBに乗る(重なったNodeなど)。
+   * AのHide Timer(300ms)はBの準備(400ms)より先に発火する
+   */
+  private void hideScenario(final Runnable next){
+    final PopupBehavior bh = newBehavior(Duration.INDEFINITE, Duration.millis(300));
+    fire(a, MouseEvent.MOUSE_MOVED);
+    later(LOAD+100, ()->{
+      check("hide: A shown", bh.visibleNode() == a);
+      fire(b, MouseEvent.MOUSE_MOVED);
+      later(LOAD+150, ()->{
+        //Bの表示で改めてHide Timerが動くので、その前に確認する
+        check("hide: B shown after A's hide timer elapsed", bh.visibleNode() == b);
+        bh.kill();
+        next.run();
+      });
+    });
+  }
+
+  /** 準備中にAから離れる。updaterは取り消しを知り、準備を途中で止める */
+  private void cancelScenario(final Runnable next){
+    final SlowUpdater u = new SlowUpdater(false);
+    final PopupBehavior bh = newBehavior(Duration.INDEFINITE, Duration.INDEFINITE, u);
+    fire(a, MouseEvent.MOUSE_MOVED);
+    later(100, ()->{
+      fire(a, MouseEvent.MOUSE_EXITED);
+      check("cancel: onCancel runs on exit", u.notified);
+      later(100, ()->{
+        check("cancel: loader sees isCancelled and stops", u.stopped);
+        later(LOAD, ()->{
+          check("cancel: loader never ran to the end", u.completed == 0);
+          check("cancel: nothing shown", bh.visibleNode() == null);
+          bh.kill();
+          next.run();
+        });
+      });
+    });
+  }
+
+  /** 準備が例外で終わる。updaterのfailedがtrueを返すので表示し、PopupMetricsにも通知される */
+  private void failScenario(final Runnable next){
+    final SlowUpdater u = new SlowUpdater(true);
+    final PopupBehavior bh = newBehavior(Duration.INDEFINITE, Duration.INDEFINITE, u);
+    final Throwable[] error = new Throwable[1];
+    final int[] count = new int[1];
+    bh.setMetrics(new PopupMetrics(){
+      @Override
+      public void loadFailed(final SinglePopupBehavior<?> b ,final Node hover ,final Throwable ex){
+        count[0]++;
+        error[0] = ex;
+      }
+    });
+    fire(a, MouseEvent.MOUSE_MOVED);
+    later(LOAD+200, ()->{
+      check("fail: loadFailed reported once", count[0] == 1);
+      check("fail: the cause is unwrapped", error[0] instanceof IllegalStateException);
+      check("fail: failed called once", u.failedCalls == 1);
+      check("fail: shown because failed returned true", bh.visibleNode() == a);
+      bh.kill();
+      next.run();
+    });
+  }
+
+  private PopupBehavior newBehavior(final Duration left,final Duration hide){
+    return newBehavior(left, hide, new SlowUpdater(false));
+  }
+
+  private PopupBehavior newBehavior(final Duration left,final Duration hide,final SlowUpdater u){
+    final Popup p = new Popup();
+    p.getContent().add(new Rectangle(120, 24, Color.LIGHTYELLOW));
+    final PopupBehavior bh = new PopupBehavior();
+    bh.setOpenDuration(Duration.millis(10));
+    bh.setLeftDuration(left);
+    bh.setHideDuration(hide);
+    bh.setPopupOnNonFocusWindow(true);
+    bh.setAsyncPopupUpdater(u);
+    bh.install(a, p);
+    bh.install(b, p);
+    return bh;
+  }
+
+  private void check(final String name,final boolean ok){
+    System.out.printf("%-4s %s%n", ok? "ok": "NG", name);
+    if(!ok){
+      failures++;
+    }
+  }
+
+  private static void later(final double ms,final Runnable r){
+    final PauseTransition t = new PauseTransition(Duration.millis(ms));
+    t.setOnFinished(e->r.run());
+    t.play();
+  }
+
+  private static void fire(final Node n,final EventType<MouseEvent> type){
+    Event.fireEvent(n, new MouseEvent(type, 10, 10, 10, 10, MouseButton.NONE, 0,
+        false, false, false, false, false, false, false, true, false, false, null));
+  }
+}
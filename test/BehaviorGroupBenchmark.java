@@ -0,0 +1,55 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import nodamushi.jfx.popup.SinglePopupBehavior.BehaviorGroup;
+import nodamushi.jfx.popup.TooltipBehavior;
+
+
+/**
+ * BehaviorGroupに大量のBehaviorを登録、削除する時間を計測する
+ */
+public class BehaviorGroupBenchmark{
+
+  public static void main(final String[] args){
+    final int n = args.length == 0 ? 100000 : Integer.parseInt(args[0]);
+    final List<TooltipBehavior> list = new ArrayList<>(n);
+    for(int i=0;i<n;i++){
+      list.add(new TooltipBehavior());
+    }
+    for(int i=0;i<5;i++){
+      run(list);
+    }
+  }
+
+  private static void run(final List<TooltipBehavior> list){
+    final BehaviorGroup g = new BehaviorGroup();
+    long t = System.nanoTime();
+    for(final TooltipBehavior b:list){
+      g.add(b);
+    }
+    final long add = System.nanoTime()-t;
+
+    t = System.nanoTime();
+    int c = 0;
+    for(final TooltipBehavior b:list){
+      if(g.contains(b)){
+        c++;
+      }
+    }
+    final long contains = System.nanoTime()-t;
+
+    t = System.nanoTime();
+    g.isShowing();
+    g.kill();
+    final long kill = System.nanoTime()-t;
+
+    t = System.nanoTime();
+    for(final TooltipBehavior b:list){
+      g.remove(b);
+    }
+    final long remove = System.nanoTime()-t;
+
+    System.out.printf("n=%d add=%.1fms contains=%.1fms(%d) kill=%.1fms remove=%.1fms size=%d%n",
+        list.size(),add/1e6,contains/1e6,c,kill/1e6,remove/1e6,g.size());
+  }
+}
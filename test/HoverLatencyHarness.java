@@ -0,0 +1,269 @@
+import java.util.Arrays;
+import java.util.Random;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.event.Event;
+import javafx.event.EventType;
+import javafx.geometry.Bounds;
+import javafx.geometry.Point2D;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.Tooltip;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.GridPane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.stage.Popup;
+import javafx.stage.PopupWindow;
+import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
+import javafx.util.Duration;
+import nodamushi.jfx.popup.NTooltip;
+import nodamushi.jfx.popup.TooltipBehavior;
+import nodamushi.jfx.popup.TooltipBehaviorBase;
+
+/**
+ * BehaviorTestのようなグリッドをヘッドレス(Monocle)で作成し、
+ * 合成したMouseEventに対して、マウスが乗ってからポップアップが表示されるまでの時間を計測する。<br/>
+ * 結果は一行のJSONで標準出力に出力する。
+ * windowShownはポップアップのWINDOW_SHOWNの回数で、一回のホバーで複数回表示されていないかを確認できる。<br/>
+ * <br/>
+ * 引数(全て省略可能)<br/>
+ * --cells=N セルの数(既定 1000)<br/>
+ * --samples=N 計測回数(既定 1000)<br/>
+ * --warmup=N 計測前に捨てる回数(既定 100)<br/>
+ * --open=ms 表示までの時間(既定 0)<br/>
+ * --mode=cold|warm cold:毎回クリックでポップアップを消してから別のセルに乗る。warm:表示中に別のセルへ移る(既定 cold)<br/>
+ * --popup=tooltip|ntooltip|popup 利用するポップアップ。popupは文字を含まないPopup(既定 tooltip)<br/>
+ * --timeout=ms 表示されなかったとみなす時間(既定 2000)<br/>
+ * --seed=N 乱数のシード<br/>
+ * --head 実際のウィンドウで実行する<br/>
+ * <br/>
+ * TooltipとNTooltipは文字を配置するため、ヘッドレスでもJavaFXのフォントのバックエンド
+ * (Linuxではlibjavafx_font_pangoが読み込むlibpango-1.0.so.0とlibpangoft2-1.0.so.0)が必要になる。
+ * これが無いと表示の度に例外となり、全てtimeoutsに数えられる。
+ * その場合はpangoをインストールするか、LD_LIBRARY_PATHで読み込めるようにしてから実行する。
+ */
+public class HoverLatencyHarness extends Application{
+
+  private static int cells = 1000;
+  private static int samples = 1000;
+  private static int warmup = 100;
+  private static double open = 0;
+  private static boolean warm = false;
+  private static String kind = "tooltip";
+  private static long timeout = 2000;
+  private static long seed = 0;
+
+  public static void main(final String[] args){
+    boolean head = false;
+    for(final String a:args){
+      final int i = a.indexOf('=');
+      final String k = i<0 ? a : a.substring(0, i);
+      final String v = i<0 ? "" : a.substring(i+1);
+      switch(k){
+        case "--cells": cells = Integer.parseInt(v); break;
+        case "--samples": samples = Integer.parseInt(v); break;
+        case "--warmup": warmup = Integer.parseInt(v); break;
+        case "--open": open = Double.parseDouble(v); break;
+        case "--mode": warm = "warm".equals(v); break;
+        case "--popup": kind = v; break;
+        case "--timeout": timeout = Long.parseLong(v); break;
+        case "--seed": seed = Long.parseLong(v); break;
+        case "--head": head = true; break;
+        default: throw new IllegalArgumentException("unknown option:"+a);
+      }
+    }
+    if(!head){
+      System.setProperty("glass.platform", "Monocle");
+      System.setProperty("monocle.platform", "Headless");
+      System.setProperty("prism.order", "sw");
+      //既定の画面(1280x800)ではグリッドのウィンドウがはみ出し、描画でBufferOverflowExceptionになる
+      System.setProperty("headless.geometry", "1920x1200-32");
+    }
+    launch(args);
+  }
+
+  /** 文字を含まないPopupを表示するBehavior */
+  private static final class PopupBehavior extends TooltipBehaviorBase<Popup>{
+    @Override
+    protected void runOpenTimer(final Popup p ,final Node hover){
+      runOpenTimer(getOpenDuration());
+    }
+    @Override
+    protected void runHideTimer(final Popup p ,final Node hover){
+      runHideTimer(getHideDuration());
+    }
+    @Override
+    protected void runLeftTimer(final Popup p ,final Node hover){
+      runLeftTimer(getLeftDuration());
+    }
+  }
+
+  private Rectangle[] nodes;
+  private PopupWindow popup;
+  private Random random;
+  private Node current;
+  private long[] latencies;
+  private int count,timeouts,windowShown;
+  private long arrival,begin,installNanos;
+  private boolean waiting;
+
+  @Override
+  public void start(final Stage primaryStage) throws Exception{
+    final int l = (int)Math.ceil(Math.sqrt(cells));
+    final double size = Math.max(1, Math.min(40, 1000.0/l));
+    final GridPane g = new GridPane();
+    nodes = new Rectangle[cells];
+    for(int i=0;i<cells;i++){
+      final Rectangle r = new Rectangle(size, size);
+      r.setFill(new Color(Math.random(), Math.random(), Math.random(), 1));
+      g.add(r, i%l, i/l);
+      nodes[i] = r;
+    }
+
+    final Duration d = new Duration(open);
+    final long t = System.nanoTime();
+    if("ntooltip".equals(kind)){
+      final NTooltip tooltip = new NTooltip("cell");
+      tooltip.setOpenDuration(d);
+      tooltip.setHideDuration(Duration.INDEFINITE);
+      tooltip.setPopupNonFocus(true);
+      for(final Rectangle r:nodes){
+        NTooltip.install(r, tooltip);
+      }
+      popup = tooltip;
+    }else if("popup".equals(kind)){
+      final Popup p = new Popup();
+      p.getContent().add(new Rectangle(60, 20, Color.LIGHTYELLOW));
+      final PopupBehavior behavior = new PopupBehavior();
+      behavior.setOpenDuration(d);
+      behavior.setHideDuration(Duration.INDEFINITE);
+      behavior.setPopupOnNonFocusWindow(true);
+      for(final Rectangle r:nodes){
+        behavior.install(r, p);
+      }
+      popup = p;
+    }else{
+      final Tooltip tooltip = new Tooltip("cell");
+      final TooltipBehavior behavior = new TooltipBehavior();
+      behavior.setOpenDuration(d);
+      behavior.setHideDuration(Duration.INDEFINITE);
+      behavior.setPopupOnNonFocusWindow(true);
+      behavior.setDefautlTooltip(tooltip);
+      for(final Rectangle r:nodes){
+        behavior.install(r);
+      }
+      popup = tooltip;
+    }
+    installNanos = System.nanoTime()-t;
+
+    popup.addEventHandler(WindowEvent.WINDOW_SHOWN, e -> {
+      windowShown++;
+      shown();
+    });
+    primaryStage.setScene(new Scene(g));
+    primaryStage.show();
+
+    random = seed == 0 ? new Random() : new Random(seed);
+    latencies = new long[samples];
+    new AnimationTimer(){
+      @Override
+      public void handle(final long now){
+        if(waiting && (System.nanoTime()-arrival)/1000000 > timeout){
+          timeouts++;
+          waiting = false;
+          next();
+        }
+      }
+    }.start();
+    Platform.runLater(this::next);
+  }
+
+  private void shown(){
+    if(!waiting) {
+      return;
+    }
+    final long now = System.nanoTime();
+    waiting = false;
+    final int i = count - warmup;
+    if(i == 0){
+      begin = arrival;
+    }
+    if(i >= 0){
+      latencies[i] = now - arrival;
+    }
+    count++;
+    Platform.runLater(this::next);
+  }
+
+  private void next(){
+    if(count >= warmup + samples){
+      finish();
+      return;
+    }
+    if(count + timeouts > (warmup + samples)*2){
+      finish();
+      return;
+    }
+    Node n;
+    do{
+      n = nodes[random.nextInt(nodes.length)];
+    }while(n == current && nodes.length > 1);
+    if(current != null){
+      if(!warm){
+        //クリックでポップアップを消す
+        fire(current, MouseEvent.MOUSE_PRESSED);
+      }
+      fire(current, MouseEvent.MOUSE_EXITED);
+    }
+    current = n;
+    waiting = true;
+    arrival = System.nanoTime();
+    fire(n, MouseEvent.MOUSE_MOVED);
+  }
+
+  private static void fire(final Node n,final EventType<MouseEvent> type){
+    final Bounds b = n.getLayoutBounds();
+    final double x = b.getMinX()+b.getWidth()/2,y = b.getMinY()+b.getHeight()/2;
+    final Point2D s = n.localToScreen(x, y);
+    final double sx = s == null ? x : s.getX(),sy = s == null ? y : s.getY();
+    Event.fireEvent(n, new MouseEvent(type, x, y, sx, sy, MouseButton.NONE, 0,
+        false, false, false, false, false, false, false, true, false, false, null));
+  }
+
+  private void finish(){
+    final int n = Math.max(0, Math.min(samples, count - warmup));
+    final long[] l = Arrays.copyOf(latencies, n);
+    Arrays.sort(l);
+    final double elapsed = n == 0 ? 0 : (System.nanoTime()-begin)/1e9;
+    final StringBuilder sb = new StringBuilder();
+    sb.append('{')
+    .append("\"popup\":\"").append(popup.getClass().getSimpleName()).append("\",")
+    .append("\"mode\":\"").append(warm?"warm":"cold").append("\",")
+    .append("\"cells\":").append(cells).append(',')
+    .append("\"openMillis\":").append(open).append(',')
+    .append("\"samples\":").append(n).append(',')
+    .append("\"timeouts\":").append(timeouts).append(',')
+    .append("\"windowShown\":").append(windowShown).append(',')
+    .append("\"installMillis\":").append(installNanos/1e6).append(',')
+    .append("\"throughputPerSec\":").append(elapsed == 0 ? 0 : n/elapsed).append(',')
+    .append("\"p50Micros\":").append(percentile(l, 0.50)/1e3).append(',')
+    .append("\"p99Micros\":").append(percentile(l, 0.99)/1e3).append(',')
+    .append("\"maxMicros\":").append(n == 0 ? 0 : l[n-1]/1e3)
+    .append('}');
+    System.out.println(sb);
+    Platform.exit();
+  }
+
+  private static long percentile(final long[] sorted,final double p){
+    if(sorted.length == 0) {
+      return 0;
+    }
+    final int i = (int)Math.ceil(p*sorted.length)-1;
+    return sorted[Math.max(0, Math.min(sorted.length-1, i))];
+  }
+}
@@ -0,0 +1,124 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.shape.Rectangle;
+import javafx.stage.Stage;
+import nodamushi.jfx.popup.TooltipBehavior;
+
+/**
+ * installを一つずつ呼び出す場合と、installAllでまとめてインストールする場合の時間を比較する。<br/>
+ * Nodeごとにハンドラを登録する通常のモードと、Scene単位でイベントを受け取るモードの両方で計測する。<br/>
+ * 引数 Nodeの数をカンマ区切りで指定する(既定 10000,100000)。--head で実際のツールキットで実行する
+ */
+public class InstallAllBenchmark extends Application{
+
+  private static int[] sizes = {10000, 100000};
+  private static final int WARMUP = 4;
+  private static final int ROUNDS = 9;
+
+  public static void main(final String[] args){
+    boolean head = false;
+    for(final String a:args){
+      if("--head".equals(a)){
+        head = true;
+      }else{
+        final String[] s = a.split(",");
+        sizes = new int[s.length];
+        for(int i=0;i<s.length;i++){
+          sizes[i] = Integer.parseInt(s[i].trim());
+        }
+      }
+    }
+    if(!head){
+      System.setProperty("glass.platform", "Monocle");
+      System.setProperty("monocle.platform", "Headless");
+      System.setProperty("prism.order", "sw");
+    }
+    launch(args);
+  }
+
+  @Override
+  public void start(final Stage primaryStage) throws Exception{
+    for(final int n:sizes){
+      final List<Node> nodes = new ArrayList<>(n);
+      final Group g = new Group();
+      for(int i=0;i<n;i++){
+        final Rectangle r = new Rectangle(4, 4);
+        g.getChildren().add(r);
+        nodes.add(r);
+      }
+      new Scene(g);
+      for(final boolean delegated:new boolean[]{false, true}){
+        run(nodes, delegated);
+      }
+    }
+    Platform.exit();
+  }
+
+  private static void run(final List<Node> nodes,final boolean delegated){
+    final long[] loop = new long[ROUNDS],all = new long[ROUNDS],uloop = new long[ROUNDS],uall = new long[ROUNDS];
+    //最初の数回は捨てる。順番による差が出ないよう、先に計測する方を交互に入れ替える
+    for(int r=-WARMUP;r<ROUNDS;r++){
+      final int i = Math.max(r, 0);
+      if((r & 1) == 0){
+        measureLoop(nodes, delegated, loop, uloop, i);
+        measureAll(nodes, delegated, all, uall, i);
+      }else{
+        measureAll(nodes, delegated, all, uall, i);
+        measureLoop(nodes, delegated, loop, uloop, i);
+      }
+    }
+    final double l = median(loop),a = median(all),ul = median(uloop),ua = median(uall);
+    System.out.printf("n=%d %-9s install loop=%.1fms installAll=%.1fms (x%.2f)  uninstall loop=%.1fms uninstallAll=%.1fms (x%.2f)%n",
+        nodes.size(), delegated?"delegated":"handlers",
+        l/1e6, a/1e6, l/a, ul/1e6, ua/1e6, ul/ua);
+  }
+
+  private static void measureLoop(final List<Node> nodes,final boolean delegated,
+      final long[] install,final long[] uninstall,final int i){
+    final TooltipBehavior b = newBehavior(delegated);
+    System.gc();
+    long t = System.nanoTime();
+    for(final Node n:nodes){
+      b.install(n);
+    }
+    install[i] = System.nanoTime()-t;
+    System.gc();
+    t = System.nanoTime();
+    for(final Node n:nodes){
+      b.uninstall(n);
+    }
+    uninstall[i] = System.nanoTime()-t;
+  }
+
+  private static void measureAll(final List<Node> nodes,final boolean delegated,
+      final long[] install,final long[] uninstall,final int i){
+    final TooltipBehavior b = newBehavior(delegated);
+    System.gc();
+    long t = System.nanoTime();
+    b.installAll(nodes);
+    install[i] = System.nanoTime()-t;
+    System.gc();
+    t = System.nanoTime();
+    b.uninstallAll(nodes);
+    uninstall[i] = System.nanoTime()-t;
+  }
+
+  private static double median(final long[] a){
+    final long[] s = a.clone();
+    Arrays.sort(s);
+    return s[s.length/2];
+  }
+
+  private static TooltipBehavior newBehavior(final boolean delegated){
+    final TooltipBehavior b = new TooltipBehavior();
+    b.setDelegatedDispatch(delegated);
+    return b;
+  }
+}
@@ -0,0 +1,125 @@
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.scene.Node;
+import javafx.scene.shape.Rectangle;
+import nodamushi.jfx.popup.PopupRegistry;
+
+/**
+ * PopupRegistryの実装毎のメモリ量、検索時間、Nodeの回収を計測する。<br/>
+ * nodePropertiesはNode毎にObservableMapを生成する以前の方式、weakIdentityは現在のデフォルト。<br/>
+ * 回収の確認では、Nodeを参照しない値と、キーのNodeを参照する値(weakIdentityでは禁止している使い方)を登録してからNodeを手放す。<br/>
+ * 引数 Nodeの数(既定 100000)
+ */
+public class PopupRegistryBenchmark{
+
+  private static final int LOOKUP_ROUNDS = 20;
+
+  /** 内容からNodeを参照するポップアップの代わり */
+  private static final class Owned{
+    final Node owner;
+    Owned(final Node owner){
+      this.owner = owner;
+    }
+  }
+
+  public static void main(final String[] args){
+    final int n = args.length == 0? 100000: Integer.parseInt(args[0]);
+    final Object shared = new Object();
+    for(int r=0;r<2;r++){
+      //一回目はウォームアップ
+      final boolean print = r == 1;
+      measure("nodeProperties", newNodes(n), shared, print);
+      measure("weakIdentity", newNodes(n), shared, print);
+    }
+    retention("nodeProperties", n, true);
+    retention("weakIdentity", n, false);
+    retention("weakIdentity", n, true);
+  }
+
+  /** 計測中に表が回収されないように保持する */
+  private static PopupRegistry keep;
+
+  /** ObservableMapを持たないNodeを作る */
+  private static List<Node> newNodes(final int size){
+    final List<Node> nodes = new ArrayList<>(size);
+    for(int i=0;i<size;i++){
+      nodes.add(new Rectangle(4, 4));
+    }
+    return nodes;
+  }
+
+  private static PopupRegistry newRegistry(final String name){
+    return "weakIdentity".equals(name)? PopupRegistry.weakIdentity():
+      PopupRegistry.nodeProperties(new Object());
+  }
+
+  private static void measure(final String name,final List<Node> nodes,final Object value,
+      final boolean print){
+    final long before = usedMemory();
+    final PopupRegistry reg = newRegistry(name);
+    for(final Node n:nodes){
+      reg.put(n, value);
+    }
+    final long mem = usedMemory()-before;
+    long best = Long.MAX_VALUE;
+    int found = 0;
+    for(int r=0;r<LOOKUP_ROUNDS;r++){
+      final long t = System.nanoTime();
+      for(final Node n:nodes){
+        if(reg.get(n) != null){
+          found++;
+        }
+      }
+      best = Math.min(best, System.nanoTime()-t);
+    }
+    if(found != nodes.size()*LOOKUP_ROUNDS){
+      throw new IllegalStateException("lookup failed");
+    }
+    for(final Node n:nodes){
+      reg.remove(n);
+    }
+    if(print){
+      System.out.printf("%-14s n=%d memory=%.1fMB (%.0fB/node) get=%.1fns%n",
+          name, nodes.size(), mem/1e6, (double)mem/nodes.size(), (double)best/nodes.size());
+    }
+  }
+
+  /**
+   * 手放したNodeがいくつ回収されるか
+   * @param owned 値がキーのNodeを参照するかどうか
+   */
+  private static void retention(final String name,final int size,final boolean owned){
+    final PopupRegistry reg = newRegistry(name);
+    keep = reg;
+    final List<WeakReference<Node>> refs = new ArrayList<>(size);
+    for(int i=0;i<size;i++){
+      final Node n = new Rectangle(4, 4);
+      reg.put(n, owned? new Owned(n): new Object());
+      refs.add(new WeakReference<>(n));
+    }
+    usedMemory();
+    int alive = 0;
+    for(final WeakReference<Node> w:refs){
+      if(w.get() != null){
+        alive++;
+      }
+    }
+    System.out.printf("%-14s owned=%-5b retained %d/%d nodes after GC%n", name, owned, alive, size);
+    keep = null;
+  }
+
+  private static long usedMemory(){
+    final Runtime rt = Runtime.getRuntime();
+    for(int i=0;i<3;i++){
+      System.gc();
+      try{
+        Thread.sleep(50);
+      }catch(final InterruptedException e){
+        Thread.currentThread().interrupt();
+      }
+    }
+    return rt.totalMemory()-rt.freeMemory();
+  }
+}
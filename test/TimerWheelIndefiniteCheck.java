@@ -0,0 +1,179 @@
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.event.Event;
+import javafx.event.EventType;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.stage.Popup;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+import nodamushi.jfx.popup.TooltipBehaviorBase;
+
+/**
+ * 表示時間が無限(Duration.INDEFINITE)のポップアップを表示している間、
+ * アニメーションのパルスが発生しないことを確認する。<br/>
+ * パルスは{@link Scene#addPostLayoutPulseListener(Runnable)}で数える。このリスナー自体はパルスを要求しない。
+ * 待機にPauseTransitionなどのアニメーションを使うとパルスが発生するので、別スレッドで待つ。<br/>
+ * 比較のため、表示までのタイマーが動いている間はパルスが発生することも確認する。<br/>
+ * 文字を含まないPopupを用いる。--head で実際のウィンドウで実行する。<br/>
+ * 全て成功した場合は終了コード0、失敗した場合は1で終了する。
+ */
+public class TimerWheelIndefiniteCheck extends Application{
+
+  /** 表示やSceneの変更によるパルスが落ち着くまでの時間 */
+  private static final long SETTLE = 300;
+  /** パルスを数える時間 */
+  private static final long WINDOW = 500;
+
+  public static void main(final String[] args){
+    boolean head = false;
+    for(final String a:args){
+      if("--head".equals(a)){
+        head = true;
+      }
+    }
+    if(!head){
+      System.setProperty("glass.platform", "Monocle");
+      System.setProperty("monocle.platform", "Headless");
+      System.setProperty("prism.order", "sw");
+    }
+    launch(args);
+  }
+
+  /** 文字を含まないPopupを表示し、openActionを直接呼び出せるBehavior */
+  private static final class PopupBehavior extends TooltipBehaviorBase<Popup>{
+    void open(){
+      openAction(null);
+    }
+    @Override
+    protected void runOpenTimer(final Popup p ,final Node hover){
+      runOpenTimer(getOpenDuration());
+    }
+    @Override
+    protected void runHideTimer(final Popup p ,final Node hover){
+      runHideTimer(getHideDuration());
+    }
+    @Override
+    protected void runLeftTimer(final Popup p ,final Node hover){
+      runLeftTimer(getLeftDuration());
+    }
+  }
+
+  private int failures;
+  private long pulses;
+  private Rectangle node;
+
+  @Override
+  public void start(final Stage stage) throws Exception{
+    node = new Rectangle(40, 40, Color.GRAY);
+    final Scene scene = new Scene(new Group(node), 100, 100);
+    scene.addPostLayoutPulseListener(()->pulses++);
+    stage.setScene(scene);
+    stage.show();
+    after(SETTLE, this::indefiniteOpen);
+  }
+
+  /**
+   * 1. 表示までも無限:ホバーしても、直接表示してもパルスは発生しない。<br/>
+   * インストール(Popupの生成など)によるパルスは落ち着くのを待ってから数える
+   */
+  private void indefiniteOpen(){
+    final PopupBehavior a = newBehavior(Duration.INDEFINITE);
+    after(SETTLE, ()->{
+      final long p0 = pulses;
+      fire(node, MouseEvent.MOUSE_MOVED);
+      after(WINDOW, ()->{
+        check("open=INDEFINITE, hovered: no pulses", pulses-p0, 0);
+        a.open();
+        check("open=INDEFINITE, shown", a.isShowing());
+        after(SETTLE, ()->{
+          final long p1 = pulses;
+          after(WINDOW, ()->{
+            check("hide=INDEFINITE, visible: no pulses", pulses-p1, 0);
+            a.kill();
+            a.uninstall(node);
+            after(SETTLE, this::timedOpen);
+          });
+        });
+      });
+    });
+  }
+
+  /** 2. 表示まで30ms:タイマーが動く間はパルスがあり、表示後は非表示のタイマーが無限なので止まる */
+  private void timedOpen(){
+    final PopupBehavior b = newBehavior(Duration.millis(30));
+    after(SETTLE, ()->{
+      final long p0 = pulses;
+      fire(node, MouseEvent.MOUSE_MOVED);
+      after(SETTLE, ()->{
+        check("open=30ms, shown", b.isShowing());
+        final long during = pulses-p0;
+        final boolean ok = during > 0;
+        System.out.printf("%-4s %s: %d%n", ok? "ok": "NG", "open=30ms: pulses while the open timer runs", during);
+        if(!ok){
+          failures++;
+        }
+        final long p1 = pulses;
+        after(WINDOW, ()->{
+          check("hide=INDEFINITE after a timed open, visible: no pulses", pulses-p1, 0);
+          check("still shown", b.isShowing());
+          b.kill();
+          System.out.println(failures == 0? "PASS": "FAIL "+failures);
+          Platform.exit();
+          System.exit(failures == 0? 0: 1);
+        });
+      });
+    });
+  }
+
+  private PopupBehavior newBehavior(final Duration open){
+    final Popup p = new Popup();
+    p.getContent().add(new Rectangle(120, 24, Color.LIGHTYELLOW));
+    final PopupBehavior b = new PopupBehavior();
+    b.setOpenDuration(open);
+    b.setHideDuration(Duration.INDEFINITE);
+    b.setLeftDuration(Duration.INDEFINITE);
+    b.setPopupOnNonFocusWindow(true);
+    b.install(node, p);
+    return b;
+  }
+
+  private void check(final String name,final long actual,final long expected){
+    final boolean ok = actual == expected;
+    System.out.printf("%-4s %s: %d%n", ok? "ok": "NG", name, actual);
+    if(!ok){
+      failures++;
+    }
+  }
+
+  private void check(final String name,final boolean ok){
+    System.out.printf("%-4s %s%n", ok? "ok": "NG", name);
+    if(!ok){
+      failures++;
+    }
+  }
+
+  /** パルスを要求しないように、別スレッドで待ってからJavaFX Application Threadで実行する */
+  private static void after(final long ms,final Runnable r){
+    final Thread t = new Thread(()->{
+      try{
+        Thread.sleep(ms);
+      }catch(final InterruptedException e){
+        Thread.currentThread().interrupt();
+      }
+      Platform.runLater(r);
+    });
+    t.setDaemon(true);
+    t.start();
+  }
+
+  private static void fire(final Node n,final EventType<MouseEvent> type){
+    Event.fireEvent(n, new MouseEvent(type, 10, 10, 10, 10, MouseButton.NONE, 0,
+        false, false, false, false, false, false, false, true, false, false, null));
+  }
+}
@@ -0,0 +1,189 @@
+import java.util.function.Consumer;
+
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.event.Event;
+import javafx.event.EventType;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.Tooltip;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.stage.PopupWindow;
+import javafx.stage.Screen;
+import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
+import javafx.util.Duration;
+import nodamushi.jfx.popup.NTooltip;
+import nodamushi.jfx.popup.TooltipBehavior;
+
+/**
+ * TooltipBehaviorとNTooltipで、一回の表示でWINDOW_SHOWNがちょうど一回だけ発生することを確認する。<br/>
+ * 画面の中央、下端の近く(カーソルの上に反転する)、右下の角の近くで表示する。
+ * 下端では直前に文字を複数行に変え、大きさが変わっても表示前に位置が決まることを確認する。<br/>
+ * 位置は、画面内に収まること、中央ではカーソルの下、下端ではカーソルの上にあること、
+ * 表示した後に動かないことを確認する。<br/>
+ * 文字を配置するので、ヘッドレスでもJavaFXのフォントのバックエンド(Linuxではpango)が必要になる。
+ * HoverLatencyHarnessを参照。--head で実際のウィンドウで実行する。<br/>
+ * 全て成功した場合は終了コード0、失敗した場合は1で終了する。
+ */
+public class TooltipShownOnceCheck extends Application{
+
+  /** 表示や非表示を待つ時間 */
+  private static final long SETTLE = 300;
+
+  public static void main(final String[] args){
+    boolean head = false;
+    for(final String a:args){
+      if("--head".equals(a)){
+        head = true;
+      }
+    }
+    if(!head){
+      System.setProperty("glass.platform", "Monocle");
+      System.setProperty("monocle.platform", "Headless");
+      System.setProperty("prism.order", "sw");
+    }
+    launch(args);
+  }
+
+  private Rectangle node;
+  private Rectangle2D screen;
+  private int failures;
+  private int shown;
+  private double shownX,shownY;
+
+  @Override
+  public void start(final Stage stage) throws Exception{
+    node = new Rectangle(40, 40, Color.GRAY);
+    stage.setScene(new Scene(new Group(node), 100, 100));
+    stage.show();
+    screen = Screen.getPrimary().getVisualBounds();
+    after(SETTLE, ()->tooltipBehavior(()->nTooltip(()->{
+      System.out.println(failures == 0? "PASS": "FAIL "+failures);
+      Platform.exit();
+      System.exit(failures == 0? 0: 1);
+    })));
+  }
+
+  private void tooltipBehavior(final Runnable next){
+    final Tooltip t = new Tooltip();
+    final TooltipBehavior b = new TooltipBehavior();
+    b.setOpenDuration(Duration.millis(10));
+    b.setHideDuration(Duration.INDEFINITE);
+    b.setPopupOnNonFocusWindow(true);
+    b.install(node, t);
+    run("TooltipBehavior", t, t::setText, ()->{
+      b.kill();
+      b.uninstall(node);
+      next.run();
+    });
+  }
+
+  private void nTooltip(final Runnable next){
+    final NTooltip t = new NTooltip();
+    t.setOpenDuration(Duration.millis(10));
+    t.setHideDuration(Duration.INDEFINITE);
+    t.setPopupNonFocus(true);
+    NTooltip.install(node, t);
+    run("NTooltip", t, t::setText, ()->{
+      t.hide();
+      NTooltip.uninstall(node);
+      next.run();
+    });
+  }
+
+  /** 中央、下端、右下の角の順に表示する */
+  private void run(final String name,final PopupWindow p,final Consumer<String> text,
+      final Runnable next){
+    p.addEventHandler(WindowEvent.WINDOW_SHOWN, e->{
+      shown++;
+      shownX = p.getX();
+      shownY = p.getY();
+    });
+    final double cx = screen.getMinX()+screen.getWidth()/2,cy = screen.getMinY()+screen.getHeight()/2;
+    //下端からの距離は、影(下に約12px)より大きく、3行の内容の高さより小さくする。
+    //反転しなかった場合にPopupWindowのautoFixで押し上げられても、内容がカーソルに重なり判別できる
+    final double bottom = screen.getMaxY()-30,right = screen.getMaxX()-4;
+    text.accept("tooltip");
+    open(name+" middle", p, cx, cy, false, ()->{
+      text.accept("tooltip\nsecond line\nthird line");
+      open(name+" bottom", p, cx, bottom, true, ()->{
+        open(name+" bottom right", p, right, bottom, true, next);
+      });
+    });
+  }
+
+  /**
+   * スクリーン座標(x,y)でNodeに乗り、表示されるのを待ってから確認し、クリックとNodeから離れることで消す
+   * @param above カーソルの上に表示されるべきかどうか
+   */
+  private void open(final String name,final PopupWindow p,final double x,final double y,
+      final boolean above,final Runnable next){
+    shown = 0;
+    fire(node, MouseEvent.MOUSE_MOVED, x, y);
+    after(SETTLE, ()->{
+      check(name+": shown", p.isShowing());
+      check(name+": WINDOW_SHOWN once", shown, 1);
+      final double px = p.getX(),py = p.getY(),w = p.getWidth(),h = p.getHeight();
+      check(name+": not moved after shown", px == shownX && py == shownY);
+      check(name+": on screen", px >= screen.getMinX() && py >= screen.getMinY()
+          && px+w <= screen.getMaxX()+1 && py+h <= screen.getMaxY()+1);
+      //ウィンドウは影の分だけ内容より大きいので、上下の判定は内容(アンカーの位置とルートの大きさ)で行う
+      final double top = p.getAnchorY(),bottom = top+p.getScene().getRoot().getLayoutBounds().getHeight();
+      System.out.printf("     %s: cursor=(%.0f,%.0f) window=(%.0f,%.0f %.0fx%.0f) content=(%.0f,%.0f-%.0f)%n",
+          name, x, y, px, py, w, h, p.getAnchorX(), top, bottom);
+      if(above){
+        check(name+": flipped above the cursor", bottom <= y+1);
+      }else{
+        check(name+": below the cursor", top >= y);
+      }
+      fire(node, MouseEvent.MOUSE_PRESSED, x, y);
+      fire(node, MouseEvent.MOUSE_EXITED, x, y);
+      after(SETTLE, ()->{
+        check(name+": hidden", !p.isShowing());
+        check(name+": no more WINDOW_SHOWN", shown, 1);
+        next.run();
+      });
+    });
+  }
+
+  private void check(final String name,final long actual,final long expected){
+    final boolean ok = actual == expected;
+    System.out.printf("%-4s %s: %d%n", ok? "ok": "NG", name, actual);
+    if(!ok){
+      failures++;
+    }
+  }
+
+  private void check(final String name,final boolean ok){
+    System.out.printf("%-4s %s%n", ok? "ok": "NG", name);
+    if(!ok){
+      failures++;
+    }
+  }
+
+  /** 別スレッドで待ってからJavaFX Application Threadで実行する */
+  private static void after(final long ms,final Runnable r){
+    final Thread t = new Thread(()->{
+      try{
+        Thread.sleep(ms);
+      }catch(final InterruptedException e){
+        Thread.currentThread().interrupt();
+      }
+      Platform.runLater(r);
+    });
+    t.setDaemon(true);
+    t.start();
+  }
+
+  private static void fire(final Node n,final EventType<MouseEvent> type,final double sx,
+      final double sy){
+    Event.fireEvent(n, new MouseEvent(type, 10, 10, sx, sy, MouseButton.NONE, 0,
+        false, false, false, false, false, false, false, true, false, false, null));
+  }
+}